@@ -17,25 +17,32 @@ package net.unknowndomain.satisj;
 
 import net.unknowndomain.satisj.common.SatisApiCall;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SignatureException;
-import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import net.unknowndomain.satisj.auth.SatisAuth;
 import net.unknowndomain.satisj.common.SatisApi;
 import net.unknowndomain.satisj.common.SatisApiException;
-import net.unknowndomain.satisj.common.SatisError;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.core5.http.ClassicHttpResponse;
-import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.io.support.ClassicRequestBuilder;
+import net.unknowndomain.satisj.common.PriorityTaskQueue;
+import net.unknowndomain.satisj.common.SatisClientConfig;
+import net.unknowndomain.satisj.common.SatisPriority;
+import net.unknowndomain.satisj.common.SatisThreadFactory;
+import net.unknowndomain.satisj.common.VirtualThreads;
+import net.unknowndomain.satisj.resilience.AdaptiveLimiter;
+import net.unknowndomain.satisj.resilience.Bulkhead;
+import net.unknowndomain.satisj.resilience.CircuitBreaker;
+import net.unknowndomain.satisj.resilience.ConcurrencyLimitException;
+import net.unknowndomain.satisj.resilience.RetryPolicy;
+import net.unknowndomain.satisj.transport.ApacheClassicTransport;
+import net.unknowndomain.satisj.transport.SatisRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,67 +52,591 @@ import org.slf4j.LoggerFactory;
  */
 public class SatisSimpleClient extends SatisApi {
     private final static Logger LOGGER = LoggerFactory.getLogger(SatisApi.class);
+    private final ExecutorService executor;
+    private final boolean ownedExecutor;
+    private final ScheduledThreadPoolExecutor hedgeTimer;
+    private final ExecutorService hedgeExecutor;
 
     public SatisSimpleClient(Environment env, SatisAuth auth)
     {
-        super(env, auth);
+        this(env, auth, new SatisClientConfig());
+    }
+
+    public SatisSimpleClient(Environment env, SatisAuth auth, SatisClientConfig config)
+    {
+        super(env, auth, config, ApacheClassicTransport::new);
+        if (this.config.getExecutor() != null)
+        {
+            executor = this.config.getExecutor();
+            ownedExecutor = false;
+        }
+        else if (this.config.isVirtualThreads() && VirtualThreads.isSupported())
+        {
+            executor = VirtualThreads.newExecutor("satisj-vworker");
+            ownedExecutor = true;
+        }
+        else
+        {
+            if (this.config.isVirtualThreads())
+            {
+                LOGGER.warn("Virtual threads require Java 21 or later, using the worker pool");
+            }
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    this.config.getWorkerThreads(), 
+                    this.config.getWorkerThreads(), 
+                    60L, TimeUnit.SECONDS, 
+                    new PriorityTaskQueue(this.config.getQueueCapacity(), this.config.getPriorityAging().toNanos()), 
+                    new SatisThreadFactory("satisj-worker"), 
+                    this.config.getRejectionPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+            ownedExecutor = true;
+        }
+        if (this.config.getHedging() == null)
+        {
+            hedgeTimer = null;
+            hedgeExecutor = null;
+        }
+        else
+        {
+            // the timer only starts the second attempts, which are signed and 
+            // sent by a pool never larger than the hedges allowed in flight
+            hedgeTimer = new ScheduledThreadPoolExecutor(1, new SatisThreadFactory("satisj-hedge-timer"));
+            hedgeTimer.setRemoveOnCancelPolicy(true);
+            int maxHedges = Math.max(this.config.getHedging().getMaxConcurrentHedges(), 1);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    maxHedges, 
+                    maxHedges, 
+                    60L, TimeUnit.SECONDS, 
+                    new SynchronousQueue<>(), 
+                    new SatisThreadFactory("satisj-hedge"));
+            pool.allowCoreThreadTimeOut(true);
+            hedgeExecutor = pool;
+        }
+    }
+    
+    /**
+     * The number of queued calls waiting for a worker thread.
+     * @return the queue depth, or -1 if the executor does not expose it
+     */
+    public int getQueueDepth()
+    {
+        if (executor instanceof ThreadPoolExecutor)
+        {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        return -1;
+    }
+    
+    /**
+     * The number of queued calls of a priority waiting for a worker thread.
+     * @param priority the priority of the calls
+     * @return the queue depth, or -1 if the executor does not expose it
+     */
+    public int getQueueDepth(SatisPriority priority)
+    {
+        if ((executor instanceof ThreadPoolExecutor) && (((ThreadPoolExecutor) executor).getQueue() instanceof PriorityTaskQueue))
+        {
+            return ((PriorityTaskQueue) ((ThreadPoolExecutor) executor).getQueue()).size(priority);
+        }
+        return -1;
+    }
+    
+    /**
+     * The number of worker threads currently running a call.
+     * @return the active thread count, or -1 if the executor does not expose it
+     */
+    public int getActiveThreads()
+    {
+        if (executor instanceof ThreadPoolExecutor)
+        {
+            return ((ThreadPoolExecutor) executor).getActiveCount();
+        }
+        return -1;
+    }
+    
+    @Override
+    public void close() throws IOException
+    {
+        if (hedgeExecutor != null)
+        {
+            hedgeTimer.shutdownNow();
+            hedgeExecutor.shutdownNow();
+        }
+        if (ownedExecutor)
+        {
+            executor.shutdown();
+            try
+            {
+                if (!executor.awaitTermination(config.getResponseTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                {
+                    executor.shutdownNow();
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.close();
     }
     
     @Override
     protected <T> T execCall(SatisApiCall call, Class<T> clazz)
     {
-        T retVal = null;
+        return run(call, clazz, null);
+    }
+    
+    /**
+     * Run the call on the current thread.
+     * @param owner the future of a queued call, whose cancellation aborts 
+     * the call, or null; a coalesced call is shared, so it is not aborted
+     */
+    private <T> T run(SatisApiCall call, Class<T> clazz, CompletableFuture<T> owner)
+    {
         try
         {
-            retVal = buildCall(call, clazz).call();
+            if (isCoalesced(call))
+            {
+                return coalesce(call, () -> sendNow(call, clazz)).get();
+            }
+            return isolated(call, clazz, owner);
         } 
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw SatisApiException.wrap(ex);
+        }
+        catch (Exception ex)
+        {
+            throw SatisApiException.wrap(ex);
+        }
+    }
+    
+    /**
+     * Send the call on the calling thread, for the callers joining it.
+     */
+    private <T> CompletableFuture<T> sendNow(SatisApiCall call, Class<T> clazz)
+    {
+        CompletableFuture<T> retVal = new CompletableFuture<>();
+        try
+        {
+            retVal.complete(isolated(call, clazz, null));
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            retVal.completeExceptionally(ex);
+        }
         catch (Exception ex)
         {
-            LOGGER.error(null, ex);
+            retVal.completeExceptionally(ex);
         }
         return retVal;
     }
     
     @Override
-    protected <T> Future<T> queueCall(SatisApiCall call, Class<T> clazz)
+    protected <T> CompletableFuture<T> queueCall(SatisApiCall call, Class<T> clazz)
     {
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        return executorService.submit(buildCall(call, clazz));
+        Bulkhead bulkhead = getBulkhead(call.getGroup());
+        if (bulkhead != null)
+        {
+            // wait for the permit before taking a worker, so that a full group cannot hold them all
+            return coalesce(call, () ->
+            {
+                CompletableFuture<T> retVal = new CompletableFuture<>();
+                if (!bulkhead.acquire(call.getPriority(), () -> submit(call, clazz, bulkhead, retVal), Runnable::run))
+                {
+                    retVal.completeExceptionally(bulkhead.full());
+                }
+                return retVal;
+            });
+        }
+        CompletableFuture<T> retVal = new CompletableFuture<>();
+        executor.execute(PriorityTaskQueue.task(call.getPriority(), () ->
+        {
+            // a call cancelled while queued is neither signed nor sent
+            if (retVal.isDone())
+            {
+                return;
+            }
+            try
+            {
+                retVal.complete(run(call, clazz, retVal));
+            }
+            catch (Exception ex)
+            {
+                retVal.completeExceptionally(ex);
+            }
+        }));
+        return retVal;
+    }
+
+    /**
+     * Run a call holding the permit of its bulkhead on a worker.
+     */
+    private <T> void submit(SatisApiCall call, Class<T> clazz, Bulkhead bulkhead, CompletableFuture<T> retVal)
+    {
+        try
+        {
+            executor.execute(PriorityTaskQueue.task(call.getPriority(), () ->
+            {
+                try
+                {
+                    if (!retVal.isDone())
+                    {
+                        retVal.complete(send(call, clazz, retVal));
+                    }
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    retVal.completeExceptionally(SatisApiException.wrap(ex));
+                }
+                catch (Exception ex)
+                {
+                    retVal.completeExceptionally(SatisApiException.wrap(ex));
+                }
+                finally
+                {
+                    bulkhead.release();
+                }
+            }));
+        }
+        catch (RejectedExecutionException ex)
+        {
+            bulkhead.release();
+            retVal.completeExceptionally(ex);
+        }
+    }
+    
+    /**
+     * Send the call holding the permit of its bulkhead, if any.
+     */
+    private <T> T isolated(SatisApiCall call, Class<T> clazz, CompletableFuture<T> owner) throws Exception
+    {
+        Bulkhead bulkhead = getBulkhead(call.getGroup());
+        if (bulkhead == null)
+        {
+            return send(call, clazz, owner);
+        }
+        if (!bulkhead.acquire(call.getPriority(), Math.min(bulkhead.getPolicy().getQueueTimeout().toNanos(), timeLeft(call))))
+        {
+            throw (timeLeft(call) <= 0) ? deadlineExceeded(call) : bulkhead.full();
+        }
+        try
+        {
+            return send(call, clazz, owner);
+        }
+        finally
+        {
+            bulkhead.release();
+        }
     }
 
     @Override
     protected <T> Callable<T> buildCall(SatisApiCall call, Class<T> clazz)
     {
-        return () ->
+        return () -> execCall(call, clazz);
+    }
+    
+    /**
+     * Send the call, retrying it as the retry policy says.
+     * Each attempt prepares the request again, so that it is signed with 
+     * the current date. Once the owner is cancelled no attempt is started 
+     * and the request in flight is aborted.
+     */
+    private <T> T send(SatisApiCall call, Class<T> clazz, CompletableFuture<T> owner) throws Exception
+    {
+        RetryPolicy retryPolicy = config.getRetryPolicy();
+        if (retryPolicy != null)
+        {
+            retryPolicy.onCall();
+        }
+        CircuitBreaker breaker = getCircuitBreaker(call.getGroup());
+        for (int attempt = 1; ; attempt++)
         {
-            T retVal = null;
-            try (final CloseableHttpClient httpClient = HttpClients.createDefault())
+            checkCancelled(owner);
+            try
             {
-                String body = call.getBody();
-                ClassicRequestBuilder bld = ClassicRequestBuilder.create(call.getMethod());
-                Map<String, String> headers = prepareHeaders(call, body);
-                for (String key : headers.keySet())
+                long wait = reservePermit(call);
+                try
                 {
-                    bld.addHeader(key, headers.get(key));
+                    if (wait > 0)
+                    {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    return limited(call, clazz, breaker, owner);
                 }
-                bld.setUri(call.getUrl(env).toString());
-                bld.setEntity(body, ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8));
-                ClassicHttpResponse resp = httpClient.execute(bld.build());
-                try (final InputStream bodyStream = resp.getEntity().getContent())
+                catch (Exception ex)
                 {
-                    if (resp.getCode() == 200)
+                    if (isRejectedLocally(ex) || (ex instanceof CancellationException))
                     {
-                        retVal = Tools.JSON_MAPPER.readValue(bodyStream, clazz);
-                    } else
-                    {
-                        throw new SatisApiException(Tools.JSON_MAPPER.readValue(bodyStream, SatisError.class));
+                        refundPermit(call);
                     }
+                    throw ex;
+                }
+            }
+            catch (Exception ex)
+            {
+                long delay = ((retryPolicy != null) && !isCancelled(owner)) ? retryPolicy.retryDelay(call.getMethod(), attempt, ex) : -1;
+                if ((delay < 0) || (TimeUnit.MILLISECONDS.toNanos(delay) >= timeLeft(call)))
+                {
+                    throw ex;
                 }
-            }catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException | IOException ex)
+                LOGGER.debug("Attempt {} of {} failed, retrying in {} ms", attempt, call.getClass().getSimpleName(), delay);
+                TimeUnit.MILLISECONDS.sleep(delay);
+            }
+        }
+    }
+    
+    /**
+     * Run an attempt within the adaptive concurrency limit, waiting for a 
+     * slot when needed.
+     */
+    private <T> T limited(SatisApiCall call, Class<T> clazz, CircuitBreaker breaker, CompletableFuture<T> owner) throws Exception
+    {
+        AdaptiveLimiter limiter = getConcurrencyLimiter();
+        if (limiter == null)
+        {
+            return attempt(call, clazz, breaker, owner);
+        }
+        if (!limiter.acquire(call.getPriority(), Math.min(config.getAdaptiveLimit().getQueueTimeout().toNanos(), timeLeft(call))))
+        {
+            if (timeLeft(call) <= 0)
+            {
+                throw deadlineExceeded(call);
+            }
+            throw new ConcurrencyLimitException("Concurrency limit of " + limiter.getLimit() + " reached, " + limiter.getQueueLength() + " calls waiting");
+        }
+        long start = System.nanoTime();
+        try
+        {
+            T retVal = attempt(call, clazz, breaker, owner);
+            limiter.release(System.nanoTime() - start, null);
+            return retVal;
+        }
+        catch (Exception ex)
+        {
+            limiter.release(System.nanoTime() - start, ex);
+            throw ex;
+        }
+    }
+    
+    /**
+     * Send an attempt on the calling thread and, if the call is hedged and 
+     * the attempt is slow, a second one from the hedging pool: the first 
+     * response wins and the request of the other attempt is aborted.
+     * When the pool is busy with other hedges the call waits for its first 
+     * attempt only.
+     */
+    private <T> T attempt(SatisApiCall call, Class<T> clazz, CircuitBreaker breaker, CompletableFuture<T> owner) throws Exception
+    {
+        long delay = hedgeDelay(call);
+        if (delay < 0)
+        {
+            return exchange(call, clazz, breaker, null, owner);
+        }
+        Exchange primary = new Exchange();
+        Exchange second = new Exchange();
+        CompletableFuture<T> hedge = new CompletableFuture<>();
+        ScheduledFuture<?> timer;
+        try
+        {
+            timer = hedgeTimer.schedule(() -> startHedge(call, clazz, breaker, primary, second, hedge, owner), delay, TimeUnit.NANOSECONDS);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            return exchange(call, clazz, breaker, null, owner);
+        }
+        try
+        {
+            return exchange(call, clazz, breaker, primary, owner);
+        }
+        catch (Exception ex)
+        {
+            if (timer.cancel(false))
+            {
+                // failed before the second attempt was due
+                throw ex;
+            }
+            try
+            {
+                // aborted by the winning second attempt, or failed while it is in flight
+                return hedge.get();
+            }
+            catch (ExecutionException hex)
+            {
+                if (hex.getCause() instanceof RejectedExecutionException)
+                {
+                    throw ex;
+                }
+                if (hex.getCause() instanceof Exception)
+                {
+                    throw (Exception) hex.getCause();
+                }
+                throw hex;
+            }
+        }
+        finally
+        {
+            timer.cancel(false);
+            hedge.cancel(false);
+            second.abort();
+        }
+    }
+    
+    /**
+     * Send the second attempt of a hedged call on the hedging pool, unless 
+     * the call is already over; a success aborts the first attempt.
+     */
+    private <T> void startHedge(SatisApiCall call, Class<T> clazz, CircuitBreaker breaker, Exchange primary, Exchange second, CompletableFuture<T> hedge, CompletableFuture<T> owner)
+    {
+        try
+        {
+            hedgeExecutor.execute(() ->
+            {
+                if (hedge.isDone())
+                {
+                    return;
+                }
+                try
+                {
+                    hedge.complete(exchange(call, clazz, breaker, second, owner));
+                    primary.abort();
+                }
+                catch (Exception ex)
+                {
+                    hedge.completeExceptionally(ex);
+                }
+            });
+        }
+        catch (RejectedExecutionException ex)
+        {
+            LOGGER.debug("All the hedging threads are busy, {} is not hedged", call.getClass().getSimpleName());
+            hedge.completeExceptionally(ex);
+        }
+    }
+    
+    private static boolean isCancelled(CompletableFuture<?> owner)
+    {
+        return (owner != null) && owner.isCancelled();
+    }
+    
+    private static void checkCancelled(CompletableFuture<?> owner)
+    {
+        if (isCancelled(owner))
+        {
+            throw new CancellationException("Call cancelled");
+        }
+    }
+    
+    /**
+     * One of the two exchanges of a hedged attempt, through which the winner 
+     * aborts the request of the other, even before it is sent.
+     */
+    private static class Exchange
+    {
+        private volatile SatisRequest request;
+        private volatile boolean aborted;
+        
+        private void sending(SatisRequest request)
+        {
+            this.request = request;
+            if (aborted)
+            {
+                request.abort();
+            }
+        }
+        
+        private void abort()
+        {
+            aborted = true;
+            SatisRequest current = request;
+            if (current != null)
             {
-                LOGGER.error(null, ex);
+                current.abort();
+            }
+        }
+    }
+    
+    /**
+     * Send a single request through the circuit breaker. The exchange of a 
+     * hedged attempt can be aborted by the other one, and any exchange by 
+     * the cancellation of its owner: the outcome of an aborted exchange is 
+     * not recorded, since it says nothing about the server.
+     */
+    private <T> T exchange(SatisApiCall call, Class<T> clazz, CircuitBreaker breaker, Exchange hedged, CompletableFuture<T> owner) throws Exception
+    {
+        checkCancelled(owner);
+        if (breaker != null)
+        {
+            breaker.acquirePermission();
+        }
+        SatisRequest request;
+        try
+        {
+            request = prepareRequest(call);
+        }
+        catch (Exception ex)
+        {
+            if (breaker != null)
+            {
+                breaker.release();
+            }
+            throw ex;
+        }
+        if (hedged != null)
+        {
+            hedged.sending(request);
+        }
+        if (owner != null)
+        {
+            owner.whenComplete((result, failure) ->
+            {
+                if (owner.isCancelled())
+                {
+                    request.abort();
+                }
+            });
+        }
+        long start = System.nanoTime();
+        try
+        {
+            T retVal = getTransport(call.getGroup()).execute(request, reader(clazz));
+            long elapsed = System.nanoTime() - start;
+            if (request.isAborted())
+            {
+                if (breaker != null)
+                {
+                    breaker.release();
+                }
+            }
+            else
+            {
+                if (breaker != null)
+                {
+                    breaker.onSuccess(elapsed);
+                }
+                recordLatency(call, elapsed);
             }
             return retVal;
-        };
+        }
+        catch (Exception ex)
+        {
+            if (request.isAborted())
+            {
+                if (breaker != null)
+                {
+                    breaker.release();
+                }
+            }
+            else if (breaker != null)
+            {
+                breaker.onError(System.nanoTime() - start, ex);
+            }
+            throw ex;
+        }
     }
 }
@@ -15,26 +15,38 @@
  */
 package net.unknowndomain.satisj.async;
 
-import net.unknowndomain.satisj.common.SatisApiCall;
+import io.reactivex.rxjava3.core.Observable;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SignatureException;
-import java.util.Map;
+import net.unknowndomain.satisj.common.SatisApiCall;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import net.unknowndomain.satisj.Environment;
 import net.unknowndomain.satisj.auth.SatisAuth;
 import net.unknowndomain.satisj.common.SatisApi;
-import org.apache.hc.client5.http.async.HttpAsyncClient;
-import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
-import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
-import org.apache.hc.client5.http.protocol.HttpClientContext;
-import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import net.unknowndomain.satisj.common.SatisApiException;
+import net.unknowndomain.satisj.common.SatisClientConfig;
+import net.unknowndomain.satisj.common.SatisThreadFactory;
+import net.unknowndomain.satisj.resilience.AdaptiveLimiter;
+import net.unknowndomain.satisj.resilience.Bulkhead;
+import net.unknowndomain.satisj.resilience.CircuitBreaker;
+import net.unknowndomain.satisj.resilience.CircuitBreakerOpenException;
+import net.unknowndomain.satisj.resilience.ConcurrencyLimitException;
+import net.unknowndomain.satisj.resilience.DeadlineExceededException;
+import net.unknowndomain.satisj.resilience.RateLimitExceededException;
+import net.unknowndomain.satisj.resilience.RetryPolicy;
+import net.unknowndomain.satisj.transport.ApacheAsyncTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,12 +56,49 @@ import org.slf4j.LoggerFactory;
  */
 public class SatisAsyncClient extends SatisApi {
     private final static Logger LOGGER = LoggerFactory.getLogger(SatisAsyncClient.class);
-    private final HttpAsyncClient httpClient;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ExecutorService workers;
+    private final boolean ownedWorkers;
+    private final AtomicInteger hedges = new AtomicInteger();
 
     public SatisAsyncClient(Environment env, SatisAuth auth)
     {
-        super(env, auth);
-        httpClient = HttpAsyncClients.createDefault();
+        this(env, auth, new SatisClientConfig());
+    }
+
+    public SatisAsyncClient(Environment env, SatisAuth auth, SatisClientConfig config)
+    {
+        super(env, auth, config, ApacheAsyncTransport::new);
+        scheduler = new ScheduledThreadPoolExecutor(1, new SatisThreadFactory("satisj-scheduler"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        if (this.config.getExecutor() != null)
+        {
+            workers = this.config.getExecutor();
+            ownedWorkers = false;
+        }
+        else
+        {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    this.config.getIoThreads(), 
+                    this.config.getIoThreads(), 
+                    60L, TimeUnit.SECONDS, 
+                    new LinkedBlockingQueue<>(), 
+                    new SatisThreadFactory("satisj-async"));
+            pool.allowCoreThreadTimeOut(true);
+            workers = pool;
+            ownedWorkers = true;
+        }
+    }
+    
+    @Override
+    public void close() throws IOException
+    {
+        scheduler.shutdownNow();
+        if (ownedWorkers)
+        {
+            workers.shutdownNow();
+        }
+        super.close();
     }
     
     @Override
@@ -59,65 +108,340 @@ public class SatisAsyncClient extends SatisApi {
         {
             return queueCall(call, clazz).get();
         } 
-        catch (InterruptedException | ExecutionException ex)
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw SatisApiException.wrap(ex);
+        }
+        catch (ExecutionException ex)
         {
-            LOGGER.error(null, ex);
+            throw SatisApiException.wrap(ex);
         }
-        return null;
     }
     
     @Override
-    protected <T> Future<T> queueCall(SatisApiCall call, Class<T> clazz)
+    protected <T> CompletableFuture<T> queueCall(SatisApiCall call, Class<T> clazz)
+    {
+        return coalesce(call, () ->
+        {
+            CompletableFuture<T> retVal = new CompletableFuture<>();
+            RetryPolicy retryPolicy = config.getRetryPolicy();
+            if (retryPolicy != null)
+            {
+                retryPolicy.onCall();
+            }
+            Bulkhead bulkhead = getBulkhead(call.getGroup());
+            if (bulkhead == null)
+            {
+                send(call, clazz, 1, retVal);
+            }
+            else
+            {
+                // the permit is held across the retries, until the call completes
+                Runnable start = () ->
+                {
+                    retVal.whenComplete((result, failure) -> bulkhead.release());
+                    send(call, clazz, 1, retVal);
+                };
+                if (!bulkhead.acquire(call.getPriority(), start, workers))
+                {
+                    retVal.completeExceptionally(bulkhead.full());
+                }
+            }
+            return retVal;
+        });
+    }
+    
+    @Override
+    protected <T> Callable <T> buildCall(SatisApiCall call, Class<T> clazz)
+    {
+        return () -> execCall(call, clazz);
+    }
+    
+    @Override
+    protected <T> Observable<T> observeCall(SatisApiCall call, Class<T> clazz)
     {
-        Future<T> retVal = null;
+        return Observable.defer(() -> Observable.fromCompletionStage(queueCall(call, clazz)));
+    }
+    
+    /**
+     * Send an attempt of the call, once its rate limit allows it; when it 
+     * fails, the retry policy tells whether to schedule the next one, 
+     * which is signed again.
+     */
+    private <T> void send(SatisApiCall call, Class<T> clazz, int attempt, CompletableFuture<T> retVal)
+    {
+        if (retVal.isDone())
+        {
+            return;
+        }
+        long wait;
         try
         {
-            String body = call.getBody();
-            AsyncRequestBuilder bld = AsyncRequestBuilder.create(call.getMethod());
-            bld.setUri(call.getUrl(env).toString());
-            Map<String, String> headers = prepareHeaders(call, body);
-            for (String key : headers.keySet())
+            wait = reservePermit(call);
+        }
+        catch (RateLimitExceededException | DeadlineExceededException ex)
+        {
+            retVal.completeExceptionally(ex);
+            return;
+        }
+        if (wait > 0)
+        {
+            // delayed until the permit is available
+            schedule(() -> dispatch(call, clazz, attempt, retVal), wait, TimeUnit.NANOSECONDS, ex -> 
             {
-                bld.addHeader(key, headers.get(key));
+                refundPermit(call);
+                retVal.completeExceptionally(SatisApiException.wrap(ex));
+            });
+            return;
+        }
+        dispatch(call, clazz, attempt, retVal);
+    }
+    
+    /**
+     * Send the attempt within the adaptive concurrency limit: when no slot 
+     * is free the attempt waits in the limiter queue, without blocking, and 
+     * is sent from the workers once a slot is released.
+     */
+    private <T> void dispatch(SatisApiCall call, Class<T> clazz, int attempt, CompletableFuture<T> retVal)
+    {
+        AdaptiveLimiter limiter = getConcurrencyLimiter();
+        if (limiter == null)
+        {
+            execute(call, clazz, attempt, retVal, null);
+        }
+        else if (!limiter.acquire(call.getPriority(), () -> execute(call, clazz, attempt, retVal, limiter), workers))
+        {
+            refundPermit(call);
+            retVal.completeExceptionally(new ConcurrencyLimitException("Concurrency limit of " + limiter.getLimit() + " reached, " + limiter.getQueueLength() + " calls waiting"));
+        }
+    }
+    
+    private <T> void execute(SatisApiCall call, Class<T> clazz, int attempt, CompletableFuture<T> retVal, AdaptiveLimiter limiter)
+    {
+        if (retVal.isDone())
+        {
+            if (limiter != null)
+            {
+                limiter.release();
             }
-            bld.setEntity(body, ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8));
-            SatisJsonConsumer cons = new SatisJsonConsumer(clazz);
-            retVal = httpClient.execute(bld.build(), cons, null, HttpClientContext.create(), null);
-        } 
-        catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException | MalformedURLException ex)
+            refundPermit(call);
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> current = attempt(call, clazz, getCircuitBreaker(call.getGroup()));
+        retVal.whenComplete((result, ex) ->
+        {
+            if (retVal.isCancelled())
+            {
+                current.cancel(true);
+            }
+        });
+        current.whenComplete((result, ex) ->
+        {
+            if (limiter != null)
+            {
+                limiter.release(System.nanoTime() - start, ex);
+            }
+            if (ex == null)
+            {
+                retVal.complete(result);
+                return;
+            }
+            if (isRejectedLocally(ex))
+            {
+                refundPermit(call);
+            }
+            RetryPolicy retryPolicy = config.getRetryPolicy();
+            long delay = (retryPolicy != null) ? retryPolicy.retryDelay(call.getMethod(), attempt, ex) : -1;
+            if ((delay < 0) || (TimeUnit.MILLISECONDS.toNanos(delay) >= timeLeft(call)))
+            {
+                retVal.completeExceptionally(SatisApiException.wrap(ex));
+                return;
+            }
+            LOGGER.debug("Attempt {} of {} failed, retrying in {} ms", attempt, call.getClass().getSimpleName(), delay);
+            schedule(() -> send(call, clazz, attempt + 1, retVal), delay, TimeUnit.MILLISECONDS, rex -> retVal.completeExceptionally(SatisApiException.wrap(ex)));
+        });
+    }
+    
+    /**
+     * Send an attempt and, if the call is hedged and the attempt is slow, 
+     * a second one: the first response wins and the other is cancelled.
+     * The call is not hedged while maxConcurrentHedges second requests are 
+     * in flight.
+     */
+    private <T> CompletableFuture<T> attempt(SatisApiCall call, Class<T> clazz, CircuitBreaker breaker)
+    {
+        long delay = hedgeDelay(call);
+        CompletableFuture<T> primary = exchange(call, clazz, breaker);
+        if ((delay < 0) || primary.isDone())
         {
-            LOGGER.error(null, ex);
+            return primary;
         }
+        CompletableFuture<T> retVal = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> hedge = new AtomicReference<>();
+        ScheduledFuture<?> timer = schedule(() ->
+        {
+            if (retVal.isDone())
+            {
+                return;
+            }
+            if (hedges.incrementAndGet() > config.getHedging().getMaxConcurrentHedges())
+            {
+                hedges.decrementAndGet();
+                LOGGER.debug("Too many hedged requests in flight, {} is not hedged", call.getClass().getSimpleName());
+                return;
+            }
+            // published before it is sent, so that a failure of the primary 
+            // in the meantime waits for it instead of failing the call
+            CompletableFuture<T> second = new CompletableFuture<>();
+            hedge.set(second);
+            second.whenComplete((result, ex) ->
+            {
+                hedges.decrementAndGet();
+                settle(retVal, result, ex, primary);
+            });
+            if (retVal.isDone())
+            {
+                second.cancel(true);
+                return;
+            }
+            CompletableFuture<T> sent = exchange(call, clazz, breaker);
+            sent.whenComplete((result, ex) -> 
+            {
+                if (ex == null)
+                {
+                    second.complete(result);
+                }
+                else
+                {
+                    second.completeExceptionally(ex);
+                }
+            });
+            second.whenComplete((result, ex) -> 
+            {
+                if (second.isCancelled())
+                {
+                    sent.cancel(true);
+                }
+            });
+        }, delay, TimeUnit.NANOSECONDS, ex -> {});
+        if (timer == null)
+        {
+            return primary;
+        }
+        primary.whenComplete((result, ex) -> settle(retVal, result, ex, hedge.get()));
+        retVal.whenComplete((result, ex) ->
+        {
+            timer.cancel(false);
+            primary.cancel(true);
+            CompletableFuture<T> second = hedge.get();
+            if (second != null)
+            {
+                second.cancel(true);
+            }
+        });
         return retVal;
     }
     
-    @Override
-    protected <T> Callable <T> buildCall(SatisApiCall call, Class<T> clazz)
+    /**
+     * Run a task on the workers after a delay: the scheduler only keeps the 
+     * time, so that signing the delayed requests never waits behind other 
+     * calls on its single thread.
+     * @return the timer, or null if the client is closed
+     */
+    private ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit, Consumer<RejectedExecutionException> rejected)
     {
-        return () ->
+        try
         {
-            T retVal = null;
-            try (final CloseableHttpAsyncClient httpClient1 = HttpAsyncClients.createDefault())
+            return scheduler.schedule(() ->
             {
-                httpClient1.start();
-                String body = call.getBody();
-                AsyncRequestBuilder bld = AsyncRequestBuilder.create(call.getMethod());
-                bld.setUri(call.getUrl(env).toString());
-                Map<String, String> headers = prepareHeaders(call, body);
-                for (String key : headers.keySet())
+                try
+                {
+                    workers.execute(task);
+                }
+                catch (RejectedExecutionException ex)
                 {
-                    bld.addHeader(key, headers.get(key));
+                    rejected.accept(ex);
                 }
-                bld.setEntity(body, ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8));
-                SatisJsonConsumer cons = new SatisJsonConsumer(clazz);
-                Future<T> future = httpClient1.execute(bld.build(), cons, null);
-                retVal = future.get();
+            }, delay, unit);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            rejected.accept(ex);
+            return null;
+        }
+    }
+    
+    /**
+     * Complete the hedged attempt with a result, or with a failure once 
+     * the other request has failed too or was never sent.
+     */
+    private static <T> void settle(CompletableFuture<T> retVal, T result, Throwable ex, CompletableFuture<T> other)
+    {
+        if (ex == null)
+        {
+            retVal.complete(result);
+        }
+        else if ((other == null) || other.isDone())
+        {
+            retVal.completeExceptionally(ex);
+        }
+    }
+    
+    /**
+     * Send a single request through the circuit breaker; cancelling the 
+     * returned future cancels the request.
+     */
+    private <T> CompletableFuture<T> exchange(SatisApiCall call, Class<T> clazz, CircuitBreaker breaker)
+    {
+        CompletableFuture<T> retVal = new CompletableFuture<>();
+        long start = System.nanoTime();
+        CompletableFuture<T> exchange;
+        try
+        {
+            if (breaker != null)
+            {
+                breaker.acquirePermission();
             }
-            catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException | IOException ex)
+            exchange = getTransport(call.getGroup()).executeAsync(prepareRequest(call), reader(clazz));
+        } 
+        catch (Exception ex)
+        {
+            if ((breaker != null) && !(ex instanceof CircuitBreakerOpenException))
             {
-                LOGGER.error(null, ex);
+                breaker.release();
             }
+            retVal.completeExceptionally(ex);
             return retVal;
-        };
+        }
+        exchange.whenComplete((result, ex) ->
+        {
+            long elapsed = System.nanoTime() - start;
+            if (ex == null)
+            {
+                if (breaker != null)
+                {
+                    breaker.onSuccess(elapsed);
+                }
+                recordLatency(call, elapsed);
+                retVal.complete(result);
+                return;
+            }
+            Throwable failure = ((ex instanceof CompletionException) && (ex.getCause() != null)) ? ex.getCause() : ex;
+            if (breaker != null)
+            {
+                breaker.onError(elapsed, failure);
+            }
+            retVal.completeExceptionally(failure);
+        });
+        retVal.whenComplete((result, ex) ->
+        {
+            if (retVal.isCancelled())
+            {
+                exchange.cancel(true);
+            }
+        });
+        return retVal;
     }
 }
@@ -15,39 +15,76 @@
  */
 package net.unknowndomain.satisj.async;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import net.unknowndomain.satisj.common.SatisApi;
+import java.nio.charset.StandardCharsets;
 import net.unknowndomain.satisj.common.SatisApiException;
-import net.unknowndomain.satisj.common.SatisError;
-import net.unknowndomain.satisj.common.SatisJsonObject;
+import net.unknowndomain.satisj.common.SatisDates;
+import net.unknowndomain.satisj.transport.SatisResponseReader;
 import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
 import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpException;
 import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.ProtocolVersion;
 import org.apache.hc.core5.util.ByteArrayBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Parses the response body as it arrives.
+ * Each chunk is fed to the non-blocking JSON parser and its tokens are 
+ * moved into a TokenBuffer, so the body bytes are never accumulated nor 
+ * copied; the result is mapped from the tokens once the body is complete.
+ * Bodies which are not JSON, such as the error pages of a proxy, are 
+ * not parsed: only their beginning is kept for the error message. An 
+ * error response whose JSON is malformed is decoded the same way, with 
+ * the parse error as its message, so that it keeps its status.
  *
  * @author journeyman
  * @param <T>
  */
-public class SatisJsonConsumer<T extends SatisJsonObject> extends AbstractBinResponseConsumer<T>
+public class SatisJsonConsumer<T> extends AbstractBinResponseConsumer<T>
 {
     private final static Logger LOGGER = LoggerFactory.getLogger(SatisJsonConsumer.class);
-    private ByteArrayBuffer buffer = new ByteArrayBuffer(1024);
-    private final Class<T> clazz;
+    private final SatisResponseReader<T> reader;
+    private JsonParser parser;
+    private TokenBuffer tokens;
+    private ByteArrayBuffer raw;
+    private int status;
+    private String contentType;
+    private String retryAfter;
+    private byte[] malformed;
+    private volatile ProtocolVersion version;
     
-    public SatisJsonConsumer(Class<T> clazz)
+    public SatisJsonConsumer(SatisResponseReader<T> reader)
     {
-        this.clazz = clazz;
+        this.reader = reader;
     }
 
     @Override
     protected void start(HttpResponse response, ContentType contentType) throws HttpException, IOException
     {
+        this.status = response.getCode();
+        this.version = response.getVersion();
+        this.contentType = (contentType != null) ? contentType.toString() : null;
+        Header retryAfterHeader = response.getFirstHeader("Retry-After");
+        this.retryAfter = (retryAfterHeader != null) ? retryAfterHeader.getValue() : null;
+        if (reader.isJson(this.contentType))
+        {
+            this.parser = reader.getJsonFactory().createNonBlockingByteBufferParser();
+            this.tokens = new TokenBuffer(parser);
+        }
+        else
+        {
+            this.raw = new ByteArrayBuffer(256);
+        }
     }
 
     @Override
@@ -55,21 +92,26 @@ public class SatisJsonConsumer<T extends SatisJsonObject> extends AbstractBinRes
     {
         try
         {
-            return SatisApi.Tools.JSON_MAPPER.readValue(buffer.toByteArray(), clazz);
-        } 
-        catch (IOException ex)
-        {
-            try 
+            if (raw != null)
             {
-                SatisError err = SatisApi.Tools.JSON_MAPPER.readValue(buffer.toByteArray(), SatisError.class);
-                throw new SatisApiException(err);
+                return reader.readRaw(status, contentType, raw.toByteArray());
             }
-            catch (IOException e)
+            endOfInput();
+            if (malformed != null)
             {
-                LOGGER.error(null, e);
+                return reader.readRaw(status, contentType, malformed);
             }
+            return reader.read(status, contentType, tokens.asParser());
+        } 
+        catch (SatisApiException ex)
+        {
+            ex.setRetryAfter(SatisDates.parseRetryAfter(retryAfter));
+            throw ex;
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
         }
-        return null;
     }
 
     @Override
@@ -81,11 +123,90 @@ public class SatisJsonConsumer<T extends SatisJsonObject> extends AbstractBinRes
     @Override
     protected void data(ByteBuffer src, boolean endOfStream) throws IOException
     {
-        buffer.append(src);
+        if (raw != null)
+        {
+            int len = Math.min(src.remaining(), SatisResponseReader.RAW_BODY_LIMIT - raw.length());
+            if (len > 0)
+            {
+                ByteBuffer chunk = src.duplicate();
+                chunk.limit(chunk.position() + len);
+                raw.append(chunk);
+            }
+            src.position(src.limit());
+            return;
+        }
+        if (malformed != null)
+        {
+            src.position(src.limit());
+            return;
+        }
+        ((ByteBufferFeeder) parser.getNonBlockingInputFeeder()).feedInput(src);
+        drain();
+        src.position(src.limit());
+        if (endOfStream)
+        {
+            endOfInput();
+        }
+    }
+    
+    private void endOfInput() throws IOException
+    {
+        if ((malformed != null) || !parser.getNonBlockingInputFeeder().needMoreInput())
+        {
+            return;
+        }
+        parser.getNonBlockingInputFeeder().endOfInput();
+        drain();
+    }
+    
+    private void drain() throws IOException
+    {
+        try
+        {
+            copyTokens();
+        }
+        catch (JsonProcessingException ex)
+        {
+            if ((status >= 200) && (status < 300))
+            {
+                throw ex;
+            }
+            malformed = ex.getOriginalMessage().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+    
+    private void copyTokens() throws IOException
+    {
+        JsonToken token = parser.nextToken();
+        while ((token != null) && (token != JsonToken.NOT_AVAILABLE))
+        {
+            tokens.copyCurrentEvent(parser);
+            token = parser.nextToken();
+        }
+    }
+
+    /**
+     * The protocol of the response.
+     * @return the version, or null before the response has started
+     */
+    public ProtocolVersion getVersion()
+    {
+        return version;
     }
 
     @Override
     public void releaseResources()
     {
+        if (parser != null)
+        {
+            try
+            {
+                parser.close();
+            }
+            catch (IOException ex)
+            {
+                LOGGER.error(null, ex);
+            }
+        }
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Signs the requests with the HTTP Signature scheme used by Satispay.
+ * 
+ * The Signature instances, already initialized with the private key, 
+ * are kept in a pool together with the buffer used for the 
+ * signing string, so that a request allocates little more than its headers.
+ * A pool is used instead of a ThreadLocal since the calls may run on 
+ * short-lived virtual threads.
+ *
+ * @author journeyman
+ */
+public class SatisSigner
+{
+    private static final int SIGNED_HEADERS = 6;
+    private static final byte[] TARGET = ascii("(request-target): ");
+    private static final byte[] HOST = ascii("\nhost: ");
+    private static final byte[] DATE = ascii("\ndate: ");
+    private static final byte[] DIGEST = ascii("\ndigest: SHA-256=");
+    
+    private final SatisAuth auth;
+    private final String host;
+    private final String userAgent;
+    private final String authorizationPrefix;
+    private final ConcurrentLinkedQueue<Engine> engines = new ConcurrentLinkedQueue<>();
+    
+    public SatisSigner(SatisAuth auth, String host, String userAgent)
+    {
+        this.auth = auth;
+        this.host = host;
+        this.userAgent = userAgent;
+        this.authorizationPrefix = "Signature keyId=\"" + auth.getKeyId() + "\", algorithm=\"rsa-sha256\", headers=\"(request-target) host date digest\", signature=\"";
+    }
+    
+    /**
+     * Signs a request and returns its headers.
+     * 
+     * @param method the HTTP method
+     * @param requestTarget the path of the request
+     * @param date the formatted request date
+     * @param digest the Base64 SHA-256 digest of the body
+     * @param idempotencyKey the idempotency key of the call
+     * @param extraHeaders further headers, as name/value pairs, not signed
+     * @return the headers, as name/value pairs
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws SignatureException 
+     */
+    public String[] sign(String method, String requestTarget, String date, String digest, String idempotencyKey, String[] extraHeaders) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException
+    {
+        Engine engine = borrow();
+        engine.reset();
+        engine.write(TARGET);
+        engine.writeLowerCase(method);
+        engine.write(' ');
+        engine.write(requestTarget);
+        engine.write(HOST);
+        engine.write(host);
+        engine.write(DATE);
+        engine.write(date);
+        engine.write(DIGEST);
+        engine.write(digest);
+        engine.sig.update(engine.buf, 0, engine.len);
+        String signature = Base64.getEncoder().encodeToString(engine.sig.sign());
+        // an engine which failed may hold part of a signing string, so only a clean one goes back
+        engines.offer(engine);
+        String[] headers = Arrays.copyOf(extraHeaders, extraHeaders.length + SIGNED_HEADERS * 2);
+        int i = extraHeaders.length;
+        headers[i++] = "User-Agent";
+        headers[i++] = userAgent;
+        headers[i++] = "Host";
+        headers[i++] = host;
+        headers[i++] = "Date";
+        headers[i++] = date;
+        headers[i++] = "Digest";
+        headers[i++] = "SHA-256=" + digest;
+        headers[i++] = "Authorization";
+        headers[i++] = authorizationPrefix + signature + '"';
+        headers[i++] = "Idempotency-Key";
+        headers[i] = idempotencyKey;
+        return headers;
+    }
+    
+    private Engine borrow() throws NoSuchAlgorithmException, InvalidKeyException
+    {
+        Engine engine = engines.poll();
+        return (engine != null) ? engine : new Engine(auth);
+    }
+    
+    private static byte[] ascii(String value)
+    {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    private static class Engine
+    {
+        private final Signature sig;
+        private byte[] buf = new byte[256];
+        private int len;
+        
+        private Engine(SatisAuth auth) throws NoSuchAlgorithmException, InvalidKeyException
+        {
+            sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(auth.getPrivateKey());
+        }
+        
+        private void reset()
+        {
+            len = 0;
+        }
+        
+        private void ensure(int extra)
+        {
+            if (len + extra > buf.length)
+            {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+            }
+        }
+        
+        private void write(char c)
+        {
+            ensure(1);
+            buf[len++] = (byte) c;
+        }
+        
+        private void write(byte[] bytes)
+        {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, len, bytes.length);
+            len += bytes.length;
+        }
+        
+        private void write(String value)
+        {
+            int n = value.length();
+            ensure(n);
+            for (int i = 0; i < n; i++)
+            {
+                char c = value.charAt(i);
+                if (c >= 0x80)
+                {
+                    write(value.substring(i).getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                buf[len++] = (byte) c;
+            }
+        }
+        
+        private void writeLowerCase(String value)
+        {
+            int n = value.length();
+            ensure(n);
+            for (int i = 0; i < n; i++)
+            {
+                char c = value.charAt(i);
+                buf[len++] = (byte) ((c >= 'A' && c <= 'Z') ? c + 32 : c);
+            }
+        }
+    }
+}
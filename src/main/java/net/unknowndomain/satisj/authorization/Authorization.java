@@ -17,7 +17,13 @@ package net.unknowndomain.satisj.authorization;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import java.io.IOException;
 import java.util.Map;
+import net.unknowndomain.satisj.common.JsonStreams;
 import net.unknowndomain.satisj.common.SatisJsonObject;
 
 /**
@@ -88,6 +94,58 @@ public class Authorization extends SatisJsonObject
     {
         return metadata;
     }
+    
+    /**
+     * Streaming deserializer, used instead of reflection by the client codec.
+     */
+    public static class Deserializer extends StdDeserializer<Authorization>
+    {
+        public static final Deserializer INSTANCE = new Deserializer();
+        
+        public Deserializer()
+        {
+            super(Authorization.class);
+        }
 
-
+        @Override
+        public Authorization deserialize(JsonParser p, DeserializationContext ctxt) throws IOException
+        {
+            Authorization retVal = new Authorization();
+            for (JsonToken token = JsonStreams.firstField(p); token == JsonToken.FIELD_NAME; token = p.nextToken())
+            {
+                String name = p.currentName();
+                p.nextToken();
+                switch (name)
+                {
+                    case "id":
+                        retVal.id = p.getValueAsString();
+                        break;
+                    case "code_identifier":
+                        retVal.codeIdentifier = p.getValueAsString();
+                        break;
+                    case "shop_uid":
+                        retVal.shopId = p.getValueAsString();
+                        break;
+                    case "consumer_uid":
+                        retVal.consumerId = p.getValueAsString();
+                        break;
+                    case "reason":
+                        retVal.reason = p.getValueAsString();
+                        break;
+                    case "callback_url":
+                        retVal.callbackUrl = p.getValueAsString();
+                        break;
+                    case "status":
+                        retVal.status = JsonStreams.readEnum(p, ctxt, AuthorizationStatus.class);
+                        break;
+                    case "metadata":
+                        retVal.metadata = (p.currentToken() == JsonToken.VALUE_NULL) ? null : ctxt.readValue(p, ctxt.getTypeFactory().constructMapType(Map.class, String.class, Object.class));
+                        break;
+                    default:
+                        p.skipChildren();
+                }
+            }
+            return retVal;
+        }
+    }
 }
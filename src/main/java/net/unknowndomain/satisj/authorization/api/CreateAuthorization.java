@@ -17,13 +17,20 @@ package net.unknowndomain.satisj.authorization.api;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import net.unknowndomain.satisj.Environment;
+import net.unknowndomain.satisj.authorization.Authorization;
+import net.unknowndomain.satisj.common.JsonStreams;
 import net.unknowndomain.satisj.common.SatisApi;
 import net.unknowndomain.satisj.common.SatisApiCall;
-import net.unknowndomain.satisj.authorization.Authorization;
+import net.unknowndomain.satisj.common.SatisApiGroup;
+import net.unknowndomain.satisj.common.SatisPayload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,22 +59,12 @@ public class CreateAuthorization extends SatisApiCall<Authorization> {
         super(api, Authorization.class);
         this.reason = reason;
         this.callbackUrl = callbackUrl;
-        this.metadata = Collections.unmodifiableMap(metadata);
+        this.metadata = Collections.unmodifiableMap(new HashMap<>(metadata));
     }
     
     @Override
-    @JsonIgnore
-    public String getBody() {
-        String body = "";
-        try
-        {
-            body = SatisApi.Tools.JSON_MAPPER.writeValueAsString(this);
-        }
-        catch (JsonProcessingException ex)
-        {
-            LOGGER.error(null, ex);
-        }
-        return body;
+    protected SatisPayload writePayload() throws IOException {
+        return writeJson();
     }
 
     @Override
@@ -76,6 +73,12 @@ public class CreateAuthorization extends SatisApiCall<Authorization> {
         return "POST";
     }
 
+    @Override
+    @JsonIgnore
+    public SatisApiGroup getGroup() {
+        return SatisApiGroup.AUTHORIZATION;
+    }
+
     @Override
     @JsonIgnore
     protected String getEndpoint(Environment env) {
@@ -113,4 +116,24 @@ public class CreateAuthorization extends SatisApiCall<Authorization> {
         return metadata;
     }
     
+    /**
+     * Streaming serializer, used instead of reflection by the client codec.
+     */
+    public static class Serializer extends StdSerializer<CreateAuthorization>
+    {
+        public Serializer()
+        {
+            super(CreateAuthorization.class);
+        }
+
+        @Override
+        public void serialize(CreateAuthorization value, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+            JsonStreams.writeString(gen, "reason", value.reason);
+            JsonStreams.writeString(gen, "callback_url", value.callbackUrl);
+            JsonStreams.writeStringMap(gen, "metadata", value.metadata);
+            gen.writeEndObject();
+        }
+    }
 }
@@ -19,6 +19,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import net.unknowndomain.satisj.Environment;
 import net.unknowndomain.satisj.common.SatisApi;
 import net.unknowndomain.satisj.common.SatisApiCall;
+import net.unknowndomain.satisj.common.SatisApiGroup;
 import net.unknowndomain.satisj.authorization.Authorization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,14 +42,14 @@ public class GetAuthorization extends SatisApiCall<Authorization> {
     
     @Override
     @JsonIgnore
-    public String getBody() {
-        return "";
+    public String getMethod() {
+        return "GET";
     }
 
     @Override
     @JsonIgnore
-    public String getMethod() {
-        return "GET";
+    public SatisApiGroup getGroup() {
+        return SatisApiGroup.AUTHORIZATION;
     }
 
     @Override
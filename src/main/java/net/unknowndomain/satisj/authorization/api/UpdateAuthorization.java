@@ -17,13 +17,20 @@ package net.unknowndomain.satisj.authorization.api;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import net.unknowndomain.satisj.Environment;
+import net.unknowndomain.satisj.authorization.Authorization;
+import net.unknowndomain.satisj.common.JsonStreams;
 import net.unknowndomain.satisj.common.SatisApi;
 import net.unknowndomain.satisj.common.SatisApiCall;
-import net.unknowndomain.satisj.authorization.Authorization;
+import net.unknowndomain.satisj.common.SatisApiGroup;
+import net.unknowndomain.satisj.common.SatisPayload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,22 +63,12 @@ public class UpdateAuthorization extends SatisApiCall<Authorization> {
         this.id = id;
         this.status = status;
         this.consumerId = consumerId;
-        this.metadata = Collections.unmodifiableMap(metadata);
+        this.metadata = Collections.unmodifiableMap(new HashMap<>(metadata));
     }
     
     @Override
-    @JsonIgnore
-    public String getBody() {
-        String body = "";
-        try
-        {
-            body = SatisApi.Tools.JSON_MAPPER.writeValueAsString(this);
-        }
-        catch (JsonProcessingException ex)
-        {
-            LOGGER.error(null, ex);
-        }
-        return body;
+    protected SatisPayload writePayload() throws IOException {
+        return writeJson();
     }
 
     @Override
@@ -80,6 +77,12 @@ public class UpdateAuthorization extends SatisApiCall<Authorization> {
         return "PUT";
     }
 
+    @Override
+    @JsonIgnore
+    public SatisApiGroup getGroup() {
+        return SatisApiGroup.AUTHORIZATION;
+    }
+
     @Override
     @JsonIgnore
     protected String getEndpoint(Environment env) {
@@ -122,4 +125,24 @@ public class UpdateAuthorization extends SatisApiCall<Authorization> {
         return id;
     }
     
+    /**
+     * Streaming serializer, used instead of reflection by the client codec.
+     */
+    public static class Serializer extends StdSerializer<UpdateAuthorization>
+    {
+        public Serializer()
+        {
+            super(UpdateAuthorization.class);
+        }
+
+        @Override
+        public void serialize(UpdateAuthorization value, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+            JsonStreams.writeString(gen, "status", value.status);
+            JsonStreams.writeString(gen, "consumer_uid", value.consumerId);
+            JsonStreams.writeStringMap(gen, "metadata", value.metadata);
+            gen.writeEndObject();
+        }
+    }
 }
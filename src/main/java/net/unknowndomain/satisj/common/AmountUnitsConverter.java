@@ -16,6 +16,7 @@
 package net.unknowndomain.satisj.common;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
  *
@@ -24,4 +25,17 @@ import java.math.BigDecimal;
 public interface AmountUnitsConverter
 {
     Long getUnits(BigDecimal amount);
+    
+    /**
+     * Convert an amount to minor units with an explicit rounding.
+     * The default implementation ignores the rounding mode and unboxes the 
+     * result of {@link #getUnits(java.math.BigDecimal)}.
+     * @param amount the amount
+     * @param rounding how the digits beyond the minor unit are rounded
+     * @return the amount in minor units
+     */
+    default long toUnits(BigDecimal amount, RoundingMode rounding)
+    {
+        return getUnits(amount);
+    }
 }
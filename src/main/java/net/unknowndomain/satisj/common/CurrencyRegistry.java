@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The converters from amounts to minor units, by ISO 4217 currency code.
+ * 
+ * The registry is preloaded with every currency known to java.util.Currency, 
+ * using its default fraction digits, and can be updated at any time: lookups 
+ * never lock and always see the last registered converter.
+ *
+ * @author journeyman
+ */
+public final class CurrencyRegistry
+{
+    /**
+     * The code of the converter used for unknown or missing currencies.
+     */
+    public static final String DEFAULT = "DEFAULT";
+    
+    private static final ConcurrentMap<String, AmountUnitsConverter> CONVERTERS = new ConcurrentHashMap<>(512);
+    
+    static
+    {
+        ShiftAUConverter[] shifts = new ShiftAUConverter[8];
+        for (Currency currency : Currency.getAvailableCurrencies())
+        {
+            int digits = currency.getDefaultFractionDigits();
+            if ((digits >= 0) && (digits < shifts.length))
+            {
+                if (shifts[digits] == null)
+                {
+                    shifts[digits] = new ShiftAUConverter(digits);
+                }
+                CONVERTERS.put(currency.getCurrencyCode(), shifts[digits]);
+            }
+        }
+        CONVERTERS.put(DEFAULT, CONVERTERS.computeIfAbsent("EUR", code -> new ShiftAUConverter(2)));
+    }
+    
+    private CurrencyRegistry()
+    {
+    }
+    
+    /**
+     * Register the converter of a currency, replacing the existing one.
+     * @param currencyCode the currency code, case insensitive
+     * @param converter the converter
+     */
+    public static void register(String currencyCode, AmountUnitsConverter converter)
+    {
+        if ((currencyCode != null) && (converter != null))
+        {
+            CONVERTERS.put(currencyCode.toUpperCase(Locale.ROOT), converter);
+        }
+    }
+    
+    /**
+     * The converter of a currency.
+     * @param currencyCode the currency code, or null for the default one
+     * @return the converter of the currency, or the default one if unknown
+     */
+    public static AmountUnitsConverter get(String currencyCode)
+    {
+        if (currencyCode == null)
+        {
+            return CONVERTERS.get(DEFAULT);
+        }
+        AmountUnitsConverter retVal = CONVERTERS.get(currencyCode);
+        if (retVal == null)
+        {
+            retVal = CONVERTERS.getOrDefault(currencyCode.toUpperCase(Locale.ROOT), CONVERTERS.get(DEFAULT));
+        }
+        return retVal;
+    }
+    
+    /**
+     * Convert an amount to minor units.
+     * @param currencyCode the currency code, or null for the default one
+     * @param amount the amount
+     * @param rounding how the digits beyond the minor unit are rounded
+     * @return the amount in minor units
+     * @throws ArithmeticException if rounding is UNNECESSARY and needed, or 
+     * if the result does not fit a long
+     */
+    public static long toUnits(String currencyCode, BigDecimal amount, RoundingMode rounding)
+    {
+        return get(currencyCode).toUnits(amount, rounding);
+    }
+}
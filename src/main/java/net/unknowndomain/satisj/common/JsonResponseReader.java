@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import net.unknowndomain.satisj.transport.SatisResponseReader;
+
+/**
+ * Maps the body of a response to the result class of the call, or to a 
+ * SatisError thrown as SatisApiException.
+ * The target is chosen from the status code before parsing, so every 
+ * response is parsed once.
+ *
+ * @author journeyman
+ * @param <T>
+ */
+class JsonResponseReader<T> implements SatisResponseReader<T>
+{
+    private final SatisCodec codec;
+    private final ObjectReader reader;
+
+    JsonResponseReader(SatisCodec codec, Class<T> clazz)
+    {
+        this.codec = codec;
+        this.reader = codec.reader(clazz);
+    }
+
+    @Override
+    public T read(int status, String contentType, JsonParser body) throws IOException
+    {
+        if (isSuccess(status))
+        {
+            return reader.readValue(body);
+        }
+        SatisError error;
+        try
+        {
+            error = codec.reader(SatisError.class).readValue(body);
+        }
+        catch (MismatchedInputException ex)
+        {
+            error = null;
+        }
+        catch (JsonProcessingException ex)
+        {
+            // a malformed error body still fails with its status, which the retries and the breaker go by
+            return readRaw(status, contentType, ex.getOriginalMessage().getBytes(StandardCharsets.UTF_8));
+        }
+        if (error == null)
+        {
+            error = new SatisError();
+        }
+        throw new SatisApiException(status, error);
+    }
+
+    @Override
+    public T readRaw(int status, String contentType, byte[] body) throws IOException
+    {
+        SatisError error = new SatisError();
+        // a success carries the status too, so that the call is not sent again:
+        // the server accepted it but answered with something else than JSON
+        error.setMessage(isSuccess(status) ? "Unexpected Content-Type " + contentType : new String(body, StandardCharsets.UTF_8));
+        throw new SatisApiException(status, error);
+    }
+    
+    private static boolean isSuccess(int status)
+    {
+        return (status >= 200) && (status < 300);
+    }
+
+    @Override
+    public JsonFactory getJsonFactory()
+    {
+        return codec.getMapper().getFactory();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Helpers shared by the hand-written streaming serializers and 
+ * deserializers of the models.
+ * Writers skip null values, as the default mapper does.
+ *
+ * @author journeyman
+ */
+public final class JsonStreams
+{
+    private JsonStreams()
+    {
+    }
+    
+    /**
+     * Move the parser to the first field of an object.
+     * @param p the parser, on START_OBJECT or on the first field
+     * @return the current token
+     * @throws IOException 
+     */
+    public static JsonToken firstField(JsonParser p) throws IOException
+    {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.START_OBJECT)
+        {
+            token = p.nextToken();
+        }
+        return token;
+    }
+    
+    public static Long readLong(JsonParser p) throws IOException
+    {
+        return (p.currentToken() == JsonToken.VALUE_NULL) ? null : p.getValueAsLong();
+    }
+    
+    public static <E extends Enum<E>> E readEnum(JsonParser p, DeserializationContext ctxt, Class<E> clazz) throws IOException
+    {
+        String text = p.getValueAsString();
+        if ((text == null) || text.isEmpty())
+        {
+            return null;
+        }
+        try
+        {
+            return Enum.valueOf(clazz, text);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            throw ctxt.weirdStringException(text, clazz, "not one of the values accepted for Enum class");
+        }
+    }
+    
+    public static Instant readInstant(JsonParser p, DeserializationContext ctxt) throws IOException
+    {
+        String text = p.getValueAsString();
+        if ((text == null) || text.isEmpty())
+        {
+            return null;
+        }
+        try
+        {
+            return SatisDates.parseIso(text);
+        }
+        catch (DateTimeParseException ex)
+        {
+            throw ctxt.weirdStringException(text, Instant.class, ex.getMessage());
+        }
+    }
+    
+    public static Map<String, String> readStringMap(JsonParser p, DeserializationContext ctxt) throws IOException
+    {
+        if (p.currentToken() == JsonToken.VALUE_NULL)
+        {
+            return null;
+        }
+        if (p.currentToken() != JsonToken.START_OBJECT)
+        {
+            throw ctxt.wrongTokenException(p, Map.class, JsonToken.START_OBJECT, null);
+        }
+        Map<String, String> retVal = new LinkedHashMap<>();
+        for (JsonToken token = p.nextToken(); token == JsonToken.FIELD_NAME; token = p.nextToken())
+        {
+            String key = p.currentName();
+            token = p.nextToken();
+            if (token.isStructStart())
+            {
+                throw ctxt.wrongTokenException(p, String.class, JsonToken.VALUE_STRING, null);
+            }
+            retVal.put(key, p.getValueAsString());
+        }
+        return retVal;
+    }
+    
+    public static void writeString(JsonGenerator gen, String name, String value) throws IOException
+    {
+        if (value != null)
+        {
+            gen.writeStringField(name, value);
+        }
+    }
+    
+    public static void writeNumber(JsonGenerator gen, String name, Long value) throws IOException
+    {
+        if (value != null)
+        {
+            gen.writeNumberField(name, value);
+        }
+    }
+    
+    public static void writeInstant(JsonGenerator gen, String name, Instant value, boolean zulu) throws IOException
+    {
+        if (value != null)
+        {
+            gen.writeStringField(name, SatisDates.formatIso(value, zulu));
+        }
+    }
+    
+    public static void writeStringMap(JsonGenerator gen, String name, Map<String, String> value) throws IOException
+    {
+        if (value != null)
+        {
+            gen.writeFieldName(name);
+            gen.writeStartObject();
+            for (Map.Entry<String, String> entry : value.entrySet())
+            {
+                gen.writeFieldName(entry.getKey());
+                if (entry.getValue() == null)
+                {
+                    gen.writeNull();
+                }
+                else
+                {
+                    gen.writeString(entry.getValue());
+                }
+            }
+            gen.writeEndObject();
+        }
+    }
+    
+    /**
+     * Writes an Instant as in the responses, "2019-03-18T15:10:24.000Z".
+     */
+    public static class InstantSerializer extends StdSerializer<Instant>
+    {
+        public InstantSerializer()
+        {
+            super(Instant.class);
+        }
+
+        @Override
+        public void serialize(Instant value, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeString(SatisDates.formatIso(value, true));
+        }
+    }
+    
+    /**
+     * Writes an Instant as in the requests, "2019-03-18T15:10:24.000+0000".
+     */
+    public static class OffsetInstantSerializer extends StdSerializer<Instant>
+    {
+        public OffsetInstantSerializer()
+        {
+            super(Instant.class);
+        }
+
+        @Override
+        public void serialize(Instant value, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeString(SatisDates.formatIso(value, false));
+        }
+    }
+    
+    /**
+     * Reads an ISO-8601 date time as an Instant.
+     */
+    public static class InstantDeserializer extends StdDeserializer<Instant>
+    {
+        public InstantDeserializer()
+        {
+            super(Instant.class);
+        }
+
+        @Override
+        public Instant deserialize(JsonParser p, DeserializationContext ctxt) throws IOException
+        {
+            return readInstant(p, ctxt);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The bounded work queue of a thread pool, which serves the tasks by 
+ * {@link SatisPriority} and then in arrival order.
+ * 
+ * The tasks not wrapped by {@link #task(SatisPriority, Runnable)} have 
+ * the NORMAL priority.
+ *
+ * @author journeyman
+ */
+public class PriorityTaskQueue extends PriorityBlockingQueue<Runnable>
+{
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    
+    private final int capacity;
+    private final long agingNanos;
+
+    /**
+     * Create a queue.
+     * @param capacity the most tasks queued, beyond which the pool rejects
+     * @param agingNanos the aging time for each priority level
+     */
+    public PriorityTaskQueue(int capacity, long agingNanos)
+    {
+        super(Math.min(capacity, 64), PriorityTaskQueue::compare);
+        this.capacity = capacity;
+        this.agingNanos = agingNanos;
+    }
+    
+    /**
+     * Wrap a task with its priority.
+     * @param priority the priority of the task
+     * @param task the task
+     * @return the task to execute
+     */
+    public static Runnable task(SatisPriority priority, Runnable task)
+    {
+        return new Task(priority, task);
+    }
+    
+    /**
+     * Queues a task unless the queue is full; the offers are serialized, 
+     * so that concurrent ones cannot go over the capacity.
+     * @param e the task
+     * @return false if the queue is full
+     */
+    @Override
+    public synchronized boolean offer(Runnable e)
+    {
+        if (size() >= capacity)
+        {
+            return false;
+        }
+        Task task = (e instanceof Task) ? (Task) e : new Task(SatisPriority.NORMAL, e);
+        task.rank = task.priority.rank(System.nanoTime(), agingNanos);
+        return super.offer(task);
+    }
+
+    @Override
+    public int remainingCapacity()
+    {
+        return Math.max(0, capacity - size());
+    }
+    
+    /**
+     * The queued tasks of a priority.
+     * @param priority the priority
+     * @return the number of tasks
+     */
+    public int size(SatisPriority priority)
+    {
+        int retVal = 0;
+        for (Runnable task : this)
+        {
+            if (((Task) task).priority == priority)
+            {
+                retVal++;
+            }
+        }
+        return retVal;
+    }
+    
+    private static int compare(Runnable a, Runnable b)
+    {
+        Task x = (Task) a;
+        Task y = (Task) b;
+        int retVal = Long.signum(x.rank - y.rank);
+        return (retVal != 0) ? retVal : Long.compare(x.sequence, y.sequence);
+    }
+    
+    private static class Task implements Runnable
+    {
+        private final SatisPriority priority;
+        private final Runnable task;
+        private final long sequence = SEQUENCE.incrementAndGet();
+        private long rank;
+
+        private Task(SatisPriority priority, Runnable task)
+        {
+            this.priority = priority;
+            this.task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            task.run();
+        }
+    }
+}
@@ -21,24 +21,34 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
+import java.net.MalformedURLException;
 import java.security.InvalidKeyException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.Signature;
 import java.security.SignatureException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import net.unknowndomain.satisj.auth.SatisAuth;
+import net.unknowndomain.satisj.auth.SatisSigner;
 import net.unknowndomain.satisj.authorization.api.CreateAuthorizationBuilder;
 import net.unknowndomain.satisj.authorization.api.GetAuthorizationBuilder;
 import net.unknowndomain.satisj.authorization.api.UpdateAuthorizationBuilder;
@@ -46,7 +56,24 @@ import net.unknowndomain.satisj.consumer.api.RetrieveConsumerBuilder;
 import net.unknowndomain.satisj.payment.api.CreatePaymentBuilder;
 import net.unknowndomain.satisj.payment.api.PaymentDetailsBuilder;
 import net.unknowndomain.satisj.payment.api.UpdatePaymentBuilder;
-import org.apache.commons.codec.binary.Base64;
+import net.unknowndomain.satisj.resilience.AdaptiveLimiter;
+import net.unknowndomain.satisj.resilience.Bulkhead;
+import net.unknowndomain.satisj.resilience.BulkheadPolicy;
+import net.unknowndomain.satisj.resilience.CircuitBreaker;
+import net.unknowndomain.satisj.resilience.CircuitBreakerOpenException;
+import net.unknowndomain.satisj.resilience.ConcurrencyLimitException;
+import net.unknowndomain.satisj.resilience.DeadlineExceededException;
+import net.unknowndomain.satisj.resilience.HedgingPolicy;
+import net.unknowndomain.satisj.resilience.LatencyTracker;
+import net.unknowndomain.satisj.resilience.RateLimitExceededException;
+import net.unknowndomain.satisj.resilience.RateLimitPolicy;
+import net.unknowndomain.satisj.resilience.SingleFlight;
+import net.unknowndomain.satisj.resilience.TokenBucket;
+import net.unknowndomain.satisj.transport.ApacheClassicTransport;
+import net.unknowndomain.satisj.transport.SatisRequest;
+import net.unknowndomain.satisj.transport.SatisResponseReader;
+import net.unknowndomain.satisj.transport.SatisTransport;
+import net.unknowndomain.satisj.transport.SatisTransportFactory;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.slf4j.Logger;
@@ -56,9 +83,12 @@ import org.slf4j.LoggerFactory;
  *
  * @author journeyman
  */
-public abstract class SatisApi {
+public abstract class SatisApi implements Closeable {
     protected final SatisAuth auth;
     protected final Environment env;
+    protected final SatisClientConfig config;
+    protected final SatisTransport transport;
+    protected final SatisCodec codec;
     private final static Logger LOGGER = LoggerFactory.getLogger(SatisApi.class);
     private final static String USER_AGENT;
     private final ConsumerApi consumerApi = new ConsumerApi(this);
@@ -70,6 +100,15 @@ public abstract class SatisApi {
     private String appVersion;
     private String deviceType;
     private String trackingCode;
+    private volatile String[] clientHeaders;
+    private final SatisSigner signer;
+    private final Map<SatisApiGroup, CircuitBreaker> circuitBreakers = new EnumMap<>(SatisApiGroup.class);
+    private final Map<SatisApiGroup, LatencyTracker> latencies = new EnumMap<>(SatisApiGroup.class);
+    private final Map<SatisApiGroup, Map<String, TokenBucket>> rateLimiters;
+    private final AdaptiveLimiter concurrencyLimiter;
+    private final SingleFlight singleFlight;
+    private final Map<SatisApiGroup, Bulkhead> bulkheads = new EnumMap<>(SatisApiGroup.class);
+    private final Map<SatisApiGroup, SatisTransport> groupTransports = new EnumMap<>(SatisApiGroup.class);
     
     static {
         Properties props = new Properties();
@@ -85,8 +124,61 @@ public abstract class SatisApi {
     }
     
     public SatisApi(Environment env, SatisAuth auth){
+        this(env, auth, new SatisClientConfig());
+    }
+    
+    public SatisApi(Environment env, SatisAuth auth, SatisClientConfig config){
+        this(env, auth, config, ApacheClassicTransport::new);
+    }
+    
+    /**
+     * Create the client using the transport set in the config or, when 
+     * none is set, the default transport of the implementation.
+     * 
+     * @param env
+     * @param auth
+     * @param config
+     * @param defaultTransport 
+     */
+    protected SatisApi(Environment env, SatisAuth auth, SatisClientConfig config, SatisTransportFactory defaultTransport){
         this.auth = auth;
         this.env = env;
+        // a copy, so that the policies read by each call always match the 
+        // breakers, trackers and limiters built here
+        this.config = config.copy();
+        this.signer = new SatisSigner(auth, env.getEndpoint().getHost(), USER_AGENT);
+        this.codec = new SatisCodec(this.config);
+        SatisTransportFactory factory = (this.config.getTransport() != null) ? this.config.getTransport() : defaultTransport;
+        this.transport = factory.create(this.config);
+        if (this.config.getCircuitBreaker() != null)
+        {
+            for (SatisApiGroup group : SatisApiGroup.values())
+            {
+                circuitBreakers.put(group, new CircuitBreaker(group, this.config.getCircuitBreaker()));
+            }
+        }
+        if (this.config.getHedging() != null)
+        {
+            for (SatisApiGroup group : SatisApiGroup.values())
+            {
+                latencies.put(group, new LatencyTracker(this.config.getHedging().getPercentile()));
+            }
+        }
+        this.rateLimiters = (this.config.getRateLimit() != null) ? this.config.getRateLimit().createBuckets() : Collections.emptyMap();
+        this.concurrencyLimiter = (this.config.getAdaptiveLimit() != null) ? new AdaptiveLimiter(this.config.getAdaptiveLimit(), this.config.getPriorityAging()) : null;
+        this.singleFlight = this.config.isCoalesceReads() ? new SingleFlight() : null;
+        for (SatisApiGroup group : SatisApiGroup.values())
+        {
+            BulkheadPolicy bulkhead = this.config.getBulkhead(group);
+            if (bulkhead != null)
+            {
+                bulkheads.put(group, new Bulkhead(group, bulkhead, this.config.getPriorityAging()));
+                if (bulkhead.getMaxConnections() > 0)
+                {
+                    groupTransports.put(group, factory.create(this.config.withConnections(bulkhead.getMaxConnections())));
+                }
+            }
+        }
     }
     
     /**
@@ -114,30 +206,22 @@ public abstract class SatisApi {
     public static class Tools
     {
         public static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+        /**
+         * @deprecated the signature date is formatted by {@link SatisDates#signDate()}
+         */
+        @Deprecated
         public static final FastDateFormat SIGN_DATE_FORMAT = FastDateFormat.getInstance("EEE, dd MMM yyyy HH:mm:ss Z");
-        private static Map<String, AmountUnitsConverter> CURRENCY_CONVERTER = new HashMap<>();
 
         static
         {
             JSON_MAPPER.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
             JSON_MAPPER.setSerializationInclusion(JsonInclude.Include.NON_NULL);
             JSON_MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-            CURRENCY_CONVERTER = new HashMap<>();
-            AmountUnitsConverter eurDefault = new ShiftAUConverter(2);
-            registerCurrency("DEFAULT", eurDefault);
-            registerCurrency("EUR", eurDefault);
         }
         
         private static void registerCurrency(String currencyCode, AmountUnitsConverter converter)
         {
-            if (currencyCode != null)
-            {
-                String curr = currencyCode.toUpperCase();
-                Map<String, AmountUnitsConverter> cs = new HashMap<>();
-                cs.putAll(CURRENCY_CONVERTER);
-                cs.put(curr, converter);
-                CURRENCY_CONVERTER = Collections.unmodifiableMap(cs);
-            }
+            CurrencyRegistry.register(currencyCode, converter);
         }
 
         public static Long getUnits(BigDecimal amount)
@@ -147,12 +231,7 @@ public abstract class SatisApi {
 
         public static Long getUnits(String currencyCode, BigDecimal amount)
         {
-            String curr = currencyCode;
-            if ((curr == null) || (!CURRENCY_CONVERTER.containsKey(curr)))
-            {
-                curr = "DEFAULT";
-            }
-            return CURRENCY_CONVERTER.get(curr).getUnits(amount);
+            return CurrencyRegistry.get(currencyCode).getUnits(amount);
         }
     }
 
@@ -164,6 +243,7 @@ public abstract class SatisApi {
     public void setPlatformName(String platformName)
     {
         this.platformName = platformName;
+        clientHeaders = null;
     }
 
     public String getPlatformVersion()
@@ -174,6 +254,7 @@ public abstract class SatisApi {
     public void setPlatformVersion(String platformVersion)
     {
         this.platformVersion = platformVersion;
+        clientHeaders = null;
     }
 
     public String getAppName()
@@ -184,6 +265,7 @@ public abstract class SatisApi {
     public void setAppName(String appName)
     {
         this.appName = appName;
+        clientHeaders = null;
     }
 
     public String getAppVersion()
@@ -194,6 +276,7 @@ public abstract class SatisApi {
     public void setAppVersion(String appVersion)
     {
         this.appVersion = appVersion;
+        clientHeaders = null;
     }
 
     public String getDeviceType()
@@ -204,6 +287,7 @@ public abstract class SatisApi {
     public void setDeviceType(String deviceType)
     {
         this.deviceType = deviceType;
+        clientHeaders = null;
     }
 
     public String getTrackingCode()
@@ -214,59 +298,388 @@ public abstract class SatisApi {
     public void setTrackingCode(String trackingCode)
     {
         this.trackingCode = trackingCode;
+        clientHeaders = null;
+    }
+    
+    /**
+     * Release the resources (connections, threads) held by this client.
+     * 
+     * @throws IOException 
+     */
+    @Override
+    public void close() throws IOException
+    {
+        for (SatisTransport groupTransport : groupTransports.values())
+        {
+            groupTransport.close();
+        }
+        transport.close();
+    }
+    
+    public SatisTransport getTransport()
+    {
+        return transport;
+    }
+    
+    /**
+     * The transport of a group of endpoints.
+     * @param group the group of endpoints
+     * @return the transport with the connections of the group bulkhead, 
+     * else the one shared by the client
+     */
+    public SatisTransport getTransport(SatisApiGroup group)
+    {
+        SatisTransport retVal = groupTransports.get(group);
+        return (retVal != null) ? retVal : transport;
+    }
+    
+    /**
+     * The bulkhead isolating the calls of a group of endpoints.
+     * @param group the group of endpoints
+     * @return the bulkhead, or null if the config has none for the group
+     */
+    public Bulkhead getBulkhead(SatisApiGroup group)
+    {
+        return bulkheads.get(group);
+    }
+    
+    public SatisCodec getCodec()
+    {
+        return codec;
+    }
+    
+    /**
+     * The circuit breaker shared by the calls of a group of endpoints.
+     * @param group the group of endpoints
+     * @return the breaker, or null if the config has no circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker(SatisApiGroup group)
+    {
+        return circuitBreakers.get(group);
     }
     
     protected abstract <T> T execCall(SatisApiCall call, Class<T> clazz);
-    protected abstract <T> Future<T> queueCall(SatisApiCall call, Class<T> clazz);
+    protected abstract <T> CompletableFuture<T> queueCall(SatisApiCall call, Class<T> clazz);
     protected abstract <T> Callable <T> buildCall(SatisApiCall call, Class<T> clazz);
     
-    protected Map<String,String> prepareHeaders(SatisApiCall call, String body) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException
+    protected <T> Observable<T> observeCall(SatisApiCall call, Class<T> clazz)
+    {
+        return Observable.fromCallable(buildCall(call, clazz));
+    }
+    
+    /**
+     * Execute a batch of calls, at most maxConcurrency at a time.
+     * 
+     * @param <T> the result type of the calls
+     * @param calls the calls, read as the batch progresses
+     * @param maxConcurrency the most calls in progress
+     * @return the results, in completion order
+     * @see #batch(Flowable, int)
+     */
+    public <T extends SatisJsonObject> Flowable<SatisBatchResult<T>> batch(Collection<? extends SatisApiCall<T>> calls, int maxConcurrency)
+    {
+        return batch(Flowable.fromIterable(calls), maxConcurrency);
+    }
+    
+    /**
+     * Execute a stream of calls, at most maxConcurrency at a time.
+     * The results are emitted in completion order, each paired with its 
+     * call: a failed call yields a failed result and the batch goes on.
+     * The batch follows the demand of the subscriber: a call is taken 
+     * from the stream only when one in progress is done and its result 
+     * consumed, so a slow consumer bounds the calls queued in the client. 
+     * Cancelling the subscription cancels the calls in progress.
+     * 
+     * @param <T> the result type of the calls
+     * @param calls the stream of calls
+     * @param maxConcurrency the most calls in progress
+     * @return the results, in completion order
+     */
+    public <T extends SatisJsonObject> Flowable<SatisBatchResult<T>> batch(Flowable<? extends SatisApiCall<T>> calls, int maxConcurrency)
+    {
+        return calls.flatMapSingle(this::batchCall, false, maxConcurrency);
+    }
+    
+    private <T extends SatisJsonObject> Single<SatisBatchResult<T>> batchCall(SatisApiCall<T> call)
+    {
+        return Single.create(emitter ->
+        {
+            CompletableFuture<T> future;
+            try
+            {
+                future = call.queue();
+            }
+            catch (RuntimeException ex)
+            {
+                emitter.onSuccess(SatisBatchResult.failure(call, ex));
+                return;
+            }
+            emitter.setCancellable(() -> future.cancel(true));
+            future.whenComplete((result, failure) -> emitter.onSuccess((failure == null) 
+                    ? SatisBatchResult.success(call, result) 
+                    : SatisBatchResult.failure(call, failure)));
+        });
+    }
+    
+    protected SatisRequest prepareRequest(SatisApiCall call) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException, IOException
+    {
+        long timeLeft = timeLeft(call);
+        if (timeLeft <= 0)
+        {
+            throw deadlineExceeded(call);
+        }
+        Duration responseTimeout = null;
+        if (timeLeft < config.getResponseTimeout().toNanos())
+        {
+            // at least a millisecond, as zero means no timeout for some transports
+            responseTimeout = Duration.ofNanos(Math.max(timeLeft, TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+        SatisPayload payload = call.getPayload();
+        String[] headers = signer.sign(call.getMethod(), 
+                call.getRequestTarget(env), 
+                SatisDates.signDate(), 
+                payload.getDigest(), 
+                call.getIdempotencyKey(), 
+                clientHeaders());
+        return new SatisRequest(call.getMethod(), call.getUri(env), headers, payload.getBody(), responseTimeout);
+    }
+    
+    /**
+     * The time left before the deadline of the call.
+     * 
+     * @param call
+     * @return the time in nanoseconds, or Long.MAX_VALUE if the call has 
+     * no deadline
+     */
+    protected long timeLeft(SatisApiCall call)
+    {
+        Instant deadline = call.getDeadline();
+        if (deadline == null)
+        {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.MILLISECONDS.toNanos(deadline.toEpochMilli() - System.currentTimeMillis());
+    }
+    
+    /**
+     * The failure of a call which cannot be sent before its deadline.
+     * 
+     * @param call
+     * @return the exception to report
+     */
+    protected DeadlineExceededException deadlineExceeded(SatisApiCall call)
+    {
+        return new DeadlineExceededException(call.getClass().getSimpleName(), call.getDeadline());
+    }
+    
+    /**
+     * The adaptive limit of the requests in flight, with its current 
+     * limit and queue length.
+     * @return the limiter, or null if the config has no adaptive limit
+     */
+    public AdaptiveLimiter getConcurrencyLimiter()
+    {
+        return concurrencyLimiter;
+    }
+    
+    /**
+     * The identical GET calls in flight, with the count of the calls 
+     * which joined one of them.
+     * @return the registry, or null if the config does not coalesce reads
+     */
+    public SingleFlight getSingleFlight()
+    {
+        return singleFlight;
+    }
+    
+    /**
+     * Whether the call joins the identical calls in flight.
+     * 
+     * @param call
+     * @return true for a GET when the config coalesces reads
+     */
+    protected boolean isCoalesced(SatisApiCall call)
+    {
+        return (singleFlight != null) && "GET".equals(call.getMethod());
+    }
+    
+    /**
+     * Send the call, or join the identical one in flight, keyed on its 
+     * method and endpoint.
+     * 
+     * @param <T>
+     * @param call
+     * @param request sends the call
+     * @return the future of the result, owned by the caller
+     */
+    protected <T> CompletableFuture<T> coalesce(SatisApiCall call, Supplier<CompletableFuture<T>> request)
     {
-        MessageDigest md = MessageDigest.getInstance("SHA256");
-        String digest = Base64.encodeBase64String(md.digest(body.getBytes()));
-        Date data = new Date();
-        String toSign = String.format("(request-target): %s %s\nhost: %s\ndate: %s\ndigest: SHA-256=%s", 
-                call.getMethod().toLowerCase(),
-                call.getEndpoint(env),
-                env.getEndpoint().getHost(),
-                Tools.SIGN_DATE_FORMAT.format(data),
-                digest);
-        Signature sig = Signature.getInstance("SHA256WithRSA");
-        sig.initSign(auth.getPrivateKey());
-        sig.update(toSign.getBytes(StandardCharsets.UTF_8));
-        String signature = Base64.encodeBase64String(sig.sign());
-        Map<String,String> headers = new HashMap<>();
-        headers.put("User-Agent", USER_AGENT);
-        headers.put("Host", env.getEndpoint().getHost());
-        headers.put("Date", Tools.SIGN_DATE_FORMAT.format(data));
-        headers.put("Digest", "SHA-256="+digest);
-        headers.put("Authorization", String.format("Signature keyId=\"%s\", algorithm=\"rsa-sha256\", headers=\"(request-target) host date digest\", signature=\"%s\"", auth.getKeyId(), signature));
-        headers.put("Idempotency-Key", call.getIdempotencyKey());
-        if (StringUtils.isNotBlank(platformName))
+        if (!isCoalesced(call))
         {
-            headers.put("x-satispay-os", platformName);
+            return request.get();
         }
-        if (StringUtils.isNotBlank(platformVersion))
+        String key;
+        try
         {
-            headers.put("x-satispay-osv", platformVersion);
+            key = call.getMethod() + " " + call.getUri(env);
         }
-        if (StringUtils.isNotBlank(appName))
+        catch (MalformedURLException ex)
+        {
+            return request.get();
+        }
+        return singleFlight.join(key, request);
+    }
+    
+    /**
+     * The token bucket limiting the calls of a group with a method.
+     * @param group the group of endpoints
+     * @param method the HTTP method
+     * @return the bucket of the method, else the one of the whole group, 
+     * or null if the calls are not limited
+     */
+    public TokenBucket getRateLimiter(SatisApiGroup group, String method)
+    {
+        Map<String, TokenBucket> buckets = rateLimiters.get(group);
+        if (buckets == null)
         {
-            headers.put("x-satispay-appn", appName);
+            return null;
         }
-        if (StringUtils.isNotBlank(appVersion))
+        TokenBucket retVal = buckets.get(method);
+        return (retVal != null) ? retVal : buckets.get(RateLimitPolicy.ALL_METHODS);
+    }
+    
+    /**
+     * Reserve the rate limit permit of an attempt.
+     * 
+     * @param call
+     * @return the wait in nanoseconds before sending the attempt
+     * @throws RateLimitExceededException if the wait would exceed the timeout
+     * @throws DeadlineExceededException if the wait would pass the deadline 
+     * of the call
+     */
+    protected long reservePermit(SatisApiCall call) throws RateLimitExceededException, DeadlineExceededException
+    {
+        TokenBucket bucket = getRateLimiter(call.getGroup(), call.getMethod());
+        if (bucket == null)
         {
-            headers.put("x-satispay-appv", appVersion);
+            return 0;
         }
-        if (StringUtils.isNotBlank(appName))
+        long timeout = config.getRateLimit().getTimeout().toNanos();
+        long timeLeft = timeLeft(call);
+        long retVal = bucket.reserve(Math.min(timeout, timeLeft));
+        if (retVal < 0)
         {
-            headers.put("x-satispay-devicetype", deviceType);
+            throw (timeLeft < timeout) ? deadlineExceeded(call) : new RateLimitExceededException(call.getGroup(), call.getMethod());
         }
-        if (StringUtils.isNotBlank(trackingCode))
+        return retVal;
+    }
+    
+    /**
+     * Give back the rate limit permit of an attempt which was not sent, so 
+     * that the calls rejected locally do not use up the budget of the 
+     * others.
+     * 
+     * @param call
+     */
+    protected void refundPermit(SatisApiCall call)
+    {
+        TokenBucket bucket = getRateLimiter(call.getGroup(), call.getMethod());
+        if (bucket != null)
+        {
+            bucket.refund();
+        }
+    }
+    
+    /**
+     * Tells if an attempt failed before its request was sent: rejected by 
+     * the open breaker, the adaptive limit or its deadline, or interrupted 
+     * while waiting.
+     * 
+     * @param failure the failure of the attempt
+     * @return true if the server never saw the attempt
+     */
+    protected static boolean isRejectedLocally(Throwable failure)
+    {
+        Throwable cause = ((failure instanceof CompletionException) && (failure.getCause() != null)) ? failure.getCause() : failure;
+        return (cause instanceof CircuitBreakerOpenException) 
+                || (cause instanceof ConcurrencyLimitException) 
+                || (cause instanceof DeadlineExceededException) 
+                || (cause instanceof InterruptedException);
+    }
+    
+    /**
+     * How long to wait for an attempt before sending a second one.
+     * 
+     * @param call
+     * @return the delay in nanoseconds, or -1 if the call is not hedged
+     */
+    protected long hedgeDelay(SatisApiCall call)
+    {
+        HedgingPolicy hedging = config.getHedging();
+        if ((hedging == null) || !"GET".equals(call.getMethod()))
+        {
+            return -1;
+        }
+        long retVal = hedging.getDelay().toNanos();
+        if (hedging.getPercentile() > 0)
+        {
+            retVal = Math.max(retVal, latencies.get(call.getGroup()).getPercentile());
+        }
+        return retVal;
+    }
+    
+    /**
+     * Record the latency of a successful attempt, from which the hedging 
+     * delay is computed.
+     * 
+     * @param call
+     * @param nanos 
+     */
+    protected void recordLatency(SatisApiCall call, long nanos)
+    {
+        LatencyTracker tracker = latencies.get(call.getGroup());
+        if (tracker != null)
+        {
+            tracker.record(nanos);
+        }
+    }
+    
+    protected <T> SatisResponseReader<T> reader(Class<T> clazz)
+    {
+        return new JsonResponseReader<>(codec, clazz);
+    }
+    
+    /**
+     * The x-satispay-* headers, built once and rebuilt only after a setter 
+     * has changed them.
+     * 
+     * @return the headers, as name/value pairs
+     */
+    private String[] clientHeaders()
+    {
+        String[] retVal = clientHeaders;
+        if (retVal == null)
+        {
+            List<String> headers = new ArrayList<>();
+            addClientHeader(headers, "x-satispay-os", platformName);
+            addClientHeader(headers, "x-satispay-osv", platformVersion);
+            addClientHeader(headers, "x-satispay-appn", appName);
+            addClientHeader(headers, "x-satispay-appv", appVersion);
+            addClientHeader(headers, "x-satispay-devicetype", deviceType);
+            addClientHeader(headers, "x-satispay-tracking-code", trackingCode);
+            retVal = headers.toArray(new String[headers.size()]);
+            clientHeaders = retVal;
+        }
+        return retVal;
+    }
+    
+    private static void addClientHeader(List<String> headers, String name, String value)
+    {
+        if (StringUtils.isNotBlank(value))
         {
-            headers.put("x-satispay-tracking-code", trackingCode);
+            headers.add(name);
+            headers.add(value);
         }
-        return headers;
     }
     
     public static class PaymentApi {
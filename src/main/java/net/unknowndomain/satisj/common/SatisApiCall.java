@@ -17,10 +17,14 @@ package net.unknowndomain.satisj.common;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.reactivex.rxjava3.core.Observable;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.UUID;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 import net.unknowndomain.satisj.Environment;
 
 /**
@@ -36,6 +40,14 @@ public abstract class SatisApiCall<T extends SatisJsonObject> {
     private final Class<T> clazz;
     @JsonIgnore
     private final String idempotencyKey = UUID.randomUUID().toString();
+    @JsonIgnore
+    private volatile SatisPayload payload;
+    @JsonIgnore
+    private volatile Target target;
+    @JsonIgnore
+    private volatile SatisPriority priority = SatisPriority.NORMAL;
+    @JsonIgnore
+    private volatile Instant deadline;
     
     protected SatisApiCall(SatisApi api, Class<T> clazz)
     {
@@ -48,13 +60,132 @@ public abstract class SatisApiCall<T extends SatisJsonObject> {
         return idempotencyKey;
     }
     
-    public abstract String getBody();
+    /**
+     * Sets the priority of the call in the queues of the client which 
+     * honor it, see {@link SatisPriority}.
+     * @param priority the priority, NORMAL by default
+     * @return this call
+     */
+    public SatisApiCall<T> priority(SatisPriority priority)
+    {
+        this.priority = priority;
+        return this;
+    }
+    
+    @JsonIgnore
+    public SatisPriority getPriority()
+    {
+        return priority;
+    }
+    
+    /**
+     * Sets the time after which nobody waits for the call anymore: an 
+     * attempt which would start later fails with a DeadlineExceededException 
+     * without being signed or sent, and the time left bounds the response 
+     * timeout.
+     * @param deadline the deadline, or null for none
+     * @return this call
+     */
+    public SatisApiCall<T> deadline(Instant deadline)
+    {
+        this.deadline = deadline;
+        return this;
+    }
+    
+    /**
+     * Sets the deadline of the call to the given time from now.
+     * @param timeout the time left to the call
+     * @return this call
+     */
+    public SatisApiCall<T> timeout(Duration timeout)
+    {
+        return deadline(Instant.now().plus(timeout));
+    }
+    
+    @JsonIgnore
+    public Instant getDeadline()
+    {
+        return deadline;
+    }
+    
+    /**
+     * Serialize the call body; calls without a body keep the default.
+     * @return the serialized body
+     * @throws IOException 
+     */
+    protected SatisPayload writePayload() throws IOException
+    {
+        return SatisPayload.EMPTY;
+    }
+    
+    /**
+     * Serialize the call itself as the JSON body, with the client codec.
+     * @return the serialized body
+     * @throws IOException 
+     */
+    protected SatisPayload writeJson() throws IOException
+    {
+        return SatisPayload.json(api.getCodec().writer(getClass()), this);
+    }
+    
+    /**
+     * The serialized body, computed on first use and then reused by every 
+     * execution of the call.
+     * @return the serialized body
+     * @throws IOException 
+     */
+    @JsonIgnore
+    public SatisPayload getPayload() throws IOException
+    {
+        SatisPayload retVal = payload;
+        if (retVal == null)
+        {
+            retVal = writePayload();
+            payload = retVal;
+        }
+        return retVal;
+    }
+    
+    @JsonIgnore
+    public String getBody() throws IOException
+    {
+        return new String(getPayload().getBody(), StandardCharsets.UTF_8);
+    }
+    
     public abstract String getMethod();
+    
+    /**
+     * The group of endpoints of the call, which shares the circuit breaker.
+     * @return the group of the call
+     */
+    @JsonIgnore
+    public abstract SatisApiGroup getGroup();
     protected abstract String getEndpoint(Environment env);
     
     public URL getUrl(Environment env) throws MalformedURLException
     {
-        return new URL(env.getEndpoint().getProtocol(), env.getEndpoint().getHost(), getEndpoint(env));
+        return target(env).url;
+    }
+    
+    String getRequestTarget(Environment env) throws MalformedURLException
+    {
+        return target(env).path;
+    }
+    
+    String getUri(Environment env) throws MalformedURLException
+    {
+        return target(env).uri;
+    }
+    
+    private Target target(Environment env) throws MalformedURLException
+    {
+        Target retVal = target;
+        if ((retVal == null) || (retVal.env != env))
+        {
+            retVal = new Target(env, getEndpoint(env));
+            target = retVal;
+        }
+        return retVal;
     }
     
     /**
@@ -69,10 +200,10 @@ public abstract class SatisApiCall<T extends SatisJsonObject> {
     
     /**
      * Queue the API to be called in asynchronous mode
-     * @return a Future containing the call result
+     * @return a CompletableFuture containing the call result
      * @throws SatisApiException 
      */
-    public Future <T> queue() throws SatisApiException
+    public CompletableFuture <T> queue() throws SatisApiException
     {
         return api.queueCall(this, clazz);
     }
@@ -84,7 +215,22 @@ public abstract class SatisApiCall<T extends SatisJsonObject> {
      */
     public Observable<T> call()
     {
-        return Observable.fromCallable(api.buildCall(this, clazz));
+        return api.observeCall(this, clazz);
     }
     
+    private static class Target
+    {
+        private final Environment env;
+        private final String path;
+        private final URL url;
+        private final String uri;
+        
+        private Target(Environment env, String path) throws MalformedURLException
+        {
+            this.env = env;
+            this.path = path;
+            this.url = new URL(env.getEndpoint().getProtocol(), env.getEndpoint().getHost(), path);
+            this.uri = url.toString();
+        }
+    }
 }
@@ -15,6 +15,10 @@
  */
 package net.unknowndomain.satisj.common;
 
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
 /**
  *
  * @author journeyman
@@ -22,16 +26,85 @@ package net.unknowndomain.satisj.common;
 public class SatisApiException extends RuntimeException {
 
     private final SatisError error;
+    private final int status;
+    private volatile Duration retryAfter;
+    
     /**
      * Creates a new instance of <code>SatisApiException</code> with error data.
      * @param error
      */
     public SatisApiException(SatisError error) {
+        this(-1, error);
+    }
+    
+    /**
+     * Creates a new instance of <code>SatisApiException</code> with the HTTP 
+     * status and the error data of the response.
+     * @param status
+     * @param error 
+     */
+    public SatisApiException(int status, SatisError error) {
+        super((error != null) ? error.getMessage() : null);
+        this.status = status;
         this.error = error;
     }
+    
+    /**
+     * Creates a new instance of <code>SatisApiException</code> for a call 
+     * which failed without a response, such as an I/O error.
+     * @param message
+     * @param cause 
+     */
+    public SatisApiException(String message, Throwable cause) {
+        super(message, cause);
+        this.status = -1;
+        this.error = null;
+    }
+    
+    /**
+     * Wrap the failure of a call, unless it is already a SatisApiException.
+     * @param ex the failure, possibly wrapped by a future
+     * @return the exception to throw to the caller
+     */
+    public static SatisApiException wrap(Throwable ex)
+    {
+        Throwable cause = ex;
+        while (((cause instanceof CompletionException) || (cause instanceof ExecutionException)) && (cause.getCause() != null))
+        {
+            cause = cause.getCause();
+        }
+        if (cause instanceof SatisApiException)
+        {
+            return (SatisApiException) cause;
+        }
+        return new SatisApiException(cause.toString(), cause);
+    }
 
     public SatisError getError()
     {
         return error;
     }
+
+    /**
+     * The HTTP status of the response.
+     * @return the status, or -1 if unknown
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * The wait requested by the server through the Retry-After header.
+     * @return the wait, or null if the response had no Retry-After header
+     */
+    public Duration getRetryAfter()
+    {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(Duration retryAfter)
+    {
+        this.retryAfter = retryAfter;
+    }
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+/**
+ * The groups of endpoints of the API, as exposed by the client: the calls 
+ * of a group share the same backend service, so they tend to fail together.
+ *
+ * @author journeyman
+ */
+public enum SatisApiGroup
+{
+    CONSUMER,
+    PAYMENT,
+    AUTHORIZATION,
+    TEST
+}
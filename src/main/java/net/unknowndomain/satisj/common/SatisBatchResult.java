@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+/**
+ * The outcome of a call of a batch, paired with the call itself: either 
+ * the result or the failure of that call alone.
+ *
+ * @author journeyman
+ * @param <T> the result type of the call
+ */
+public class SatisBatchResult<T extends SatisJsonObject>
+{
+    private final SatisApiCall<T> call;
+    private final T result;
+    private final SatisApiException error;
+
+    private SatisBatchResult(SatisApiCall<T> call, T result, SatisApiException error)
+    {
+        this.call = call;
+        this.result = result;
+        this.error = error;
+    }
+    
+    static <T extends SatisJsonObject> SatisBatchResult<T> success(SatisApiCall<T> call, T result)
+    {
+        return new SatisBatchResult<>(call, result, null);
+    }
+    
+    static <T extends SatisJsonObject> SatisBatchResult<T> failure(SatisApiCall<T> call, Throwable error)
+    {
+        return new SatisBatchResult<>(call, null, SatisApiException.wrap(error));
+    }
+
+    /**
+     * The call of the batch.
+     * @return the call
+     */
+    public SatisApiCall<T> getCall()
+    {
+        return call;
+    }
+
+    /**
+     * The result of the call.
+     * @return the result, or null if the call failed
+     */
+    public T getResult()
+    {
+        return result;
+    }
+
+    /**
+     * The failure of the call.
+     * @return the failure, or null if the call succeeded
+     */
+    public SatisApiException getError()
+    {
+        return error;
+    }
+
+    public boolean isSuccess()
+    {
+        return error == null;
+    }
+}
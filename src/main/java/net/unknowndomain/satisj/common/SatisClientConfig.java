@@ -0,0 +1,578 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import net.unknowndomain.satisj.resilience.AdaptiveLimitPolicy;
+import net.unknowndomain.satisj.resilience.BulkheadPolicy;
+import net.unknowndomain.satisj.resilience.CircuitBreakerPolicy;
+import net.unknowndomain.satisj.resilience.HedgingPolicy;
+import net.unknowndomain.satisj.resilience.RateLimitPolicy;
+import net.unknowndomain.satisj.resilience.RetryPolicy;
+import net.unknowndomain.satisj.transport.SatisTransportFactory;
+
+/**
+ * Tuning parameters shared by the SatisApi client implementations.
+ *
+ * Each client works on a copy of the configuration taken when it is 
+ * created: setting other values or policies afterwards has no effect on 
+ * clients already built. The policies themselves are shared with the copy, 
+ * so they must not be changed once a client uses them.
+ *
+ * @author journeyman
+ */
+public class SatisClientConfig implements Cloneable
+{
+    private int maxConnections = 20;
+    private int maxConnectionsPerRoute = 20;
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+    private SatisTransportFactory transport;
+    private boolean http2 = false;
+    private int maxConcurrentStreams = 100;
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private Duration responseTimeout = Duration.ofSeconds(30);
+    private Duration keepAlive = Duration.ofSeconds(30);
+    private Duration idleConnectionTimeout = Duration.ofMinutes(1);
+    private ExecutorService executor;
+    private boolean virtualThreads = false;
+    private int workerThreads = 20;
+    private int queueCapacity = 1000;
+    private RejectedExecutionHandler rejectionPolicy = new ThreadPoolExecutor.AbortPolicy();
+    private ObjectMapper objectMapper;
+    private boolean bytecodeAcceleration = false;
+    private boolean streamingSerializers = true;
+    private RetryPolicy retryPolicy;
+    private CircuitBreakerPolicy circuitBreaker;
+    private HedgingPolicy hedging;
+    private RateLimitPolicy rateLimit;
+    private AdaptiveLimitPolicy adaptiveLimit;
+    private boolean coalesceReads = false;
+    private Duration priorityAging = Duration.ofSeconds(1);
+    private Map<SatisApiGroup, BulkheadPolicy> bulkheads = new EnumMap<>(SatisApiGroup.class);
+
+    /**
+     * Sets the maximum number of pooled connections.
+     * @param maxConnections the total size of the connection pool
+     * @return this config
+     */
+    public SatisClientConfig maxConnections(int maxConnections)
+    {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of pooled connections towards a single host.
+     * Since the client talks only with the Satispay endpoint this is
+     * usually the same as the total pool size.
+     * @param maxConnectionsPerRoute the pool size for a single host
+     * @return this config
+     */
+    public SatisClientConfig maxConnectionsPerRoute(int maxConnectionsPerRoute)
+    {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        return this;
+    }
+
+    /**
+     * Sets the number of IO reactor threads used by the asynchronous client.
+     * @param ioThreads the number of IO dispatcher threads
+     * @return this config
+     */
+    public SatisClientConfig ioThreads(int ioThreads)
+    {
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    /**
+     * Sets the transport used to send the requests, instead of the default 
+     * one of the client implementation.
+     * For example <code>config.transport(SatisTransportFactory.jdk())</code> sends 
+     * the requests through java.net.http.HttpClient (requires Java 11+).
+     * @param transport the factory of the transport
+     * @return this config
+     */
+    public SatisClientConfig transport(SatisTransportFactory transport)
+    {
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Enables HTTP/2 on the transports supporting it.
+     * HTTP/2 is negotiated via ALPN on each TLS connection and requests are 
+     * multiplexed as concurrent streams over the ones which agreed on it; 
+     * the other connections, and the plain HTTP ones, use HTTP/1.1.
+     * @param http2 true to use HTTP/2 when available
+     * @return this config
+     */
+    public SatisClientConfig http2(boolean http2)
+    {
+        this.http2 = http2;
+        return this;
+    }
+
+    /**
+     * Sets how many requests can be in flight at once when HTTP/2 is enabled.
+     * Requests beyond the limit wait in the client until a stream completes,
+     * whichever protocol the connection negotiated.
+     * @param maxConcurrentStreams the maximum number of concurrent streams
+     * @return this config
+     */
+    public SatisClientConfig maxConcurrentStreams(int maxConcurrentStreams)
+    {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        return this;
+    }
+
+    /**
+     * Sets the timeout used to establish a new connection.
+     * @param connectTimeout the connect timeout
+     * @return this config
+     */
+    public SatisClientConfig connectTimeout(Duration connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the maximum time to wait for a response once the request is sent.
+     * @param responseTimeout the response timeout
+     * @return this config
+     */
+    public SatisClientConfig responseTimeout(Duration responseTimeout)
+    {
+        this.responseTimeout = responseTimeout;
+        return this;
+    }
+
+    /**
+     * Sets how long an idle connection is kept alive when the server does
+     * not send a Keep-Alive header.
+     * @param keepAlive the default keep-alive duration
+     * @return this config
+     */
+    public SatisClientConfig keepAlive(Duration keepAlive)
+    {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * Sets after how long an unused pooled connection is evicted by the
+     * background evictor.
+     * @param idleConnectionTimeout the maximum idle time of a pooled connection
+     * @return this config
+     */
+    public SatisClientConfig idleConnectionTimeout(Duration idleConnectionTimeout)
+    {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the executor used to run the queued calls; the async client uses 
+     * it to sign and send the attempts which waited for a retry, a permit or 
+     * a free slot.
+     * An executor passed here is shared, not owned: the client will not shut 
+     * it down when closed. When no executor is set the client creates its 
+     * own pool: a bounded one, using the worker, queue and rejection 
+     * settings, or one of ioThreads threads for the async client.
+     * @param executor the executor used to run the queued calls
+     * @return this config
+     */
+    public SatisClientConfig executor(ExecutorService executor)
+    {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Runs the queued calls on a new virtual thread each, instead of the 
+     * bounded worker pool, when the JVM supports them (Java 21+).
+     * A blocked virtual thread does not hold a platform thread, so the number 
+     * of calls in flight is limited only by the connection pool: raise 
+     * maxConnections accordingly. On older JVMs the worker pool is used.
+     * Ignored when an executor is set.
+     * @param virtualThreads true to use virtual threads when available
+     * @return this config
+     */
+    public SatisClientConfig virtualThreads(boolean virtualThreads)
+    {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads of the client-owned executor.
+     * @param workerThreads the maximum number of calls running concurrently
+     * @return this config
+     */
+    public SatisClientConfig workerThreads(int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    /**
+     * Sets how many calls can wait for a free worker thread before the 
+     * rejection policy is applied.
+     * @param queueCapacity the capacity of the client-owned executor queue
+     * @return this config
+     */
+    public SatisClientConfig queueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets what happens to a call queued when the executor queue is full.
+     * Defaults to {@link ThreadPoolExecutor.AbortPolicy}, which throws a 
+     * RejectedExecutionException to the caller.
+     * @param rejectionPolicy the rejection policy of the client-owned executor
+     * @return this config
+     */
+    public SatisClientConfig rejectionPolicy(RejectedExecutionHandler rejectionPolicy)
+    {
+        this.rejectionPolicy = rejectionPolicy;
+        return this;
+    }
+
+    /**
+     * Sets the mapper used to write the requests and read the responses.
+     * The client works on a copy, so later changes to the mapper have no 
+     * effect on it. Defaults to a copy of SatisApi.Tools.JSON_MAPPER.
+     * @param objectMapper the template of the client mapper
+     * @return this config
+     */
+    public SatisClientConfig objectMapper(ObjectMapper objectMapper)
+    {
+        this.objectMapper = objectMapper;
+        return this;
+    }
+
+    /**
+     * Registers the Blackbird module, or else the Afterburner module, on the 
+     * client mapper, replacing reflection with generated accessors.
+     * The module is not a dependency of SatisJ and must be on the classpath.
+     * @param bytecodeAcceleration true to register the module
+     * @return this config
+     */
+    public SatisClientConfig bytecodeAcceleration(boolean bytecodeAcceleration)
+    {
+        this.bytecodeAcceleration = bytecodeAcceleration;
+        return this;
+    }
+
+    /**
+     * Uses the hand-written streaming serializers of the calls and 
+     * deserializers of the models instead of Jackson reflection.
+     * They follow the default mapper settings: disable them when the 
+     * configured mapper changes how the models are written or read.
+     * @param streamingSerializers false to use Jackson reflection only
+     * @return this config
+     */
+    public SatisClientConfig streamingSerializers(boolean streamingSerializers)
+    {
+        this.streamingSerializers = streamingSerializers;
+        return this;
+    }
+
+    /**
+     * Sets the policy used to retry the calls failed with an I/O error or a 
+     * transient status. When set, the automatic retries of the transport 
+     * are disabled. Defaults to no retries.
+     * @param retryPolicy the retry policy, or null to never retry
+     * @return this config
+     */
+    public SatisClientConfig retryPolicy(RetryPolicy retryPolicy)
+    {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Gives each group of endpoints (payments, authorizations, consumers) 
+     * its own circuit breaker, which fails the calls at once while the 
+     * group is failing. Defaults to no circuit breakers.
+     * @param circuitBreaker the thresholds of the breakers, or null
+     * @return this config
+     */
+    public SatisClientConfig circuitBreaker(CircuitBreakerPolicy circuitBreaker)
+    {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    /**
+     * Hedges the read-only calls: a second request is sent when the first 
+     * is slower than usual, and the first response wins. 
+     * SatisSimpleClient runs the hedged calls on a dedicated pool. 
+     * Defaults to no hedging.
+     * @param hedging the hedging policy, or null
+     * @return this config
+     */
+    public SatisClientConfig hedging(HedgingPolicy hedging)
+    {
+        this.hedging = hedging;
+        return this;
+    }
+
+    /**
+     * Limits the rate of the calls of each group of endpoints, such as 
+     * payment creations or consumer lookups. Defaults to no limits.
+     * @param rateLimit the rate limits, or null
+     * @return this config
+     */
+    public SatisClientConfig rateLimit(RateLimitPolicy rateLimit)
+    {
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    /**
+     * Limits the requests in flight to a limit which adapts to the latency 
+     * of the server; the requests over the limit wait in the client.
+     * Defaults to no limit besides the connection pool.
+     * @param adaptiveLimit the adaptive limit settings, or null
+     * @return this config
+     */
+    public SatisClientConfig adaptiveLimit(AdaptiveLimitPolicy adaptiveLimit)
+    {
+        this.adaptiveLimit = adaptiveLimit;
+        return this;
+    }
+
+    /**
+     * Coalesces the identical GET calls in flight at the same time, such as 
+     * the details of one payment asked by several threads: they share one 
+     * request and one parsed result, so the callers must not modify it.
+     * Defaults to false.
+     * @param coalesceReads true to coalesce the identical GET calls
+     * @return this config
+     */
+    public SatisClientConfig coalesceReads(boolean coalesceReads)
+    {
+        this.coalesceReads = coalesceReads;
+        return this;
+    }
+
+    /**
+     * Isolates the calls of a group of endpoints in a bulkhead, with its 
+     * own concurrency permits and, optionally, its own connections; for 
+     * example a bulkhead on CONSUMER keeps a burst of lookups from slowing 
+     * the payments. Defaults to no bulkhead.
+     * @param group the group of endpoints
+     * @param bulkhead the bulkhead settings, or null to remove it
+     * @return this config
+     */
+    public SatisClientConfig bulkhead(SatisApiGroup group, BulkheadPolicy bulkhead)
+    {
+        if (bulkhead == null)
+        {
+            bulkheads.remove(group);
+        }
+        else
+        {
+            bulkheads.put(group, bulkhead);
+        }
+        return this;
+    }
+    
+    /**
+     * Sets how long a queued call waits before it goes ahead of the calls 
+     * of the next higher {@link SatisPriority}, so that a stream of 
+     * urgent calls cannot starve the others. Applies to the worker queue 
+     * of the simple client, the adaptive limit and the bulkheads, the 
+     * only queues ordered by priority. Defaults to 1 second.
+     * @param priorityAging the aging time for each priority level
+     * @return this config
+     */
+    public SatisClientConfig priorityAging(Duration priorityAging)
+    {
+        this.priorityAging = priorityAging;
+        return this;
+    }
+    
+    /**
+     * A copy of this config, kept by a client so that later changes do not 
+     * reach it.
+     */
+    SatisClientConfig copy()
+    {
+        try
+        {
+            SatisClientConfig retVal = (SatisClientConfig) clone();
+            retVal.bulkheads = new EnumMap<>(bulkheads);
+            return retVal;
+        }
+        catch (CloneNotSupportedException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * A copy of this config with a connection pool of the given size, for 
+     * the transport of a bulkhead.
+     */
+    SatisClientConfig withConnections(int maxConnections)
+    {
+        SatisClientConfig retVal = copy();
+        retVal.maxConnections = maxConnections;
+        retVal.maxConnectionsPerRoute = maxConnections;
+        return retVal;
+    }
+
+    public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute()
+    {
+        return maxConnectionsPerRoute;
+    }
+
+    public int getIoThreads()
+    {
+        return ioThreads;
+    }
+
+    public SatisTransportFactory getTransport()
+    {
+        return transport;
+    }
+
+    public boolean isHttp2()
+    {
+        return http2;
+    }
+
+    public int getMaxConcurrentStreams()
+    {
+        return maxConcurrentStreams;
+    }
+
+    public Duration getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    public Duration getResponseTimeout()
+    {
+        return responseTimeout;
+    }
+
+    public Duration getKeepAlive()
+    {
+        return keepAlive;
+    }
+
+    public Duration getIdleConnectionTimeout()
+    {
+        return idleConnectionTimeout;
+    }
+
+    public ExecutorService getExecutor()
+    {
+        return executor;
+    }
+
+    public boolean isVirtualThreads()
+    {
+        return virtualThreads;
+    }
+
+    public int getWorkerThreads()
+    {
+        return workerThreads;
+    }
+
+    public int getQueueCapacity()
+    {
+        return queueCapacity;
+    }
+
+    public RejectedExecutionHandler getRejectionPolicy()
+    {
+        return rejectionPolicy;
+    }
+
+    public ObjectMapper getObjectMapper()
+    {
+        return objectMapper;
+    }
+
+    public boolean isBytecodeAcceleration()
+    {
+        return bytecodeAcceleration;
+    }
+
+    public boolean isStreamingSerializers()
+    {
+        return streamingSerializers;
+    }
+
+    public RetryPolicy getRetryPolicy()
+    {
+        return retryPolicy;
+    }
+
+    public CircuitBreakerPolicy getCircuitBreaker()
+    {
+        return circuitBreaker;
+    }
+
+    public HedgingPolicy getHedging()
+    {
+        return hedging;
+    }
+
+    public RateLimitPolicy getRateLimit()
+    {
+        return rateLimit;
+    }
+
+    public AdaptiveLimitPolicy getAdaptiveLimit()
+    {
+        return adaptiveLimit;
+    }
+
+    public boolean isCoalesceReads()
+    {
+        return coalesceReads;
+    }
+
+    public Duration getPriorityAging()
+    {
+        return priorityAging;
+    }
+
+    public BulkheadPolicy getBulkhead(SatisApiGroup group)
+    {
+        return bulkheads.get(group);
+    }
+}
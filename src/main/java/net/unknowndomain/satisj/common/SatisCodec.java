@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.unknowndomain.satisj.authorization.Authorization;
+import net.unknowndomain.satisj.authorization.api.CreateAuthorization;
+import net.unknowndomain.satisj.authorization.api.UpdateAuthorization;
+import net.unknowndomain.satisj.consumer.Consumer;
+import net.unknowndomain.satisj.payment.Actor;
+import net.unknowndomain.satisj.payment.Payment;
+import net.unknowndomain.satisj.payment.api.CreatePayment;
+import net.unknowndomain.satisj.payment.api.UpdatePayment;
+import net.unknowndomain.satisj.test.TestResults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The JSON mapper of a client, with an ObjectReader and an ObjectWriter 
+ * resolved once for each type and then reused by every call.
+ *
+ * @author journeyman
+ */
+public class SatisCodec
+{
+    private final static Logger LOGGER = LoggerFactory.getLogger(SatisCodec.class);
+    private final static String[] ACCELERATION_MODULES = {
+        "com.fasterxml.jackson.module.blackbird.BlackbirdModule",
+        "com.fasterxml.jackson.module.afterburner.AfterburnerModule"
+    };
+    
+    private final ObjectMapper mapper;
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    
+    /**
+     * Create the codec of a client.
+     * The mapper of the config, or the default SatisApi.Tools.JSON_MAPPER, 
+     * is copied so that the client never changes a shared instance.
+     * @param config the client config
+     */
+    public SatisCodec(SatisClientConfig config)
+    {
+        ObjectMapper base = (config.getObjectMapper() != null) ? config.getObjectMapper() : SatisApi.Tools.JSON_MAPPER;
+        mapper = base.copy();
+        if (config.isStreamingSerializers())
+        {
+            mapper.registerModule(streamingModule());
+        }
+        if (config.isBytecodeAcceleration())
+        {
+            registerAccelerationModule();
+        }
+        for (Class<?> clazz : new Class<?>[]{ Payment.class, Authorization.class, Consumer.class, TestResults.class, SatisError.class })
+        {
+            reader(clazz);
+        }
+        for (Class<?> clazz : new Class<?>[]{ CreatePayment.class, UpdatePayment.class, CreateAuthorization.class, UpdateAuthorization.class })
+        {
+            writer(clazz);
+        }
+    }
+    
+    /**
+     * The module of the hand-written serializers and deserializers; the 
+     * types not covered are still handled by Jackson reflection.
+     * @return the module
+     */
+    public static SimpleModule streamingModule()
+    {
+        SimpleModule module = new SimpleModule("SatisJStreaming");
+        module.addSerializer(CreatePayment.class, new CreatePayment.Serializer());
+        module.addSerializer(UpdatePayment.class, new UpdatePayment.Serializer());
+        module.addSerializer(CreateAuthorization.class, new CreateAuthorization.Serializer());
+        module.addSerializer(UpdateAuthorization.class, new UpdateAuthorization.Serializer());
+        module.addDeserializer(Payment.class, new Payment.Deserializer());
+        module.addDeserializer(Actor.class, new Actor.Deserializer());
+        module.addDeserializer(Authorization.class, new Authorization.Deserializer());
+        module.addDeserializer(Consumer.class, new Consumer.Deserializer());
+        return module;
+    }
+    
+    private void registerAccelerationModule()
+    {
+        for (String moduleClass : ACCELERATION_MODULES)
+        {
+            try
+            {
+                mapper.registerModule((Module) Class.forName(moduleClass).getDeclaredConstructor().newInstance());
+                LOGGER.debug("Registered {}", moduleClass);
+                return;
+            }
+            catch (ClassNotFoundException ex)
+            {
+                // try the next one
+            }
+            catch (ReflectiveOperationException | LinkageError ex)
+            {
+                LOGGER.warn("Cannot register " + moduleClass, ex);
+            }
+        }
+        LOGGER.warn("Bytecode acceleration requires jackson-module-blackbird or jackson-module-afterburner on the classpath");
+    }
+    
+    public ObjectMapper getMapper()
+    {
+        return mapper;
+    }
+    
+    /**
+     * The reader of a type.
+     * @param clazz the type to read
+     * @return the cached reader
+     */
+    public ObjectReader reader(Class<?> clazz)
+    {
+        return readers.computeIfAbsent(clazz, mapper::readerFor);
+    }
+    
+    /**
+     * The writer of a type.
+     * @param clazz the type to write
+     * @return the cached writer
+     */
+    public ObjectWriter writer(Class<?> clazz)
+    {
+        return writers.computeIfAbsent(clazz, mapper::writerFor);
+    }
+}
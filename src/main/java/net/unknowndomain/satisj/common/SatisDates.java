@@ -0,0 +1,331 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Hand-written parsing and formatting of the dates used by the API: the 
+ * ISO-8601 dates of the JSON bodies and the RFC-1123 date of the signature.
+ * All dates are in UTC.
+ *
+ * @author journeyman
+ */
+public final class SatisDates
+{
+    private static final String[] DAYS = { "Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed" };
+    private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+    
+    private static volatile CachedDate signDate = new CachedDate(Long.MIN_VALUE, null);
+    
+    private SatisDates()
+    {
+    }
+    
+    /**
+     * The current date in the format of the signature, computed at most 
+     * once per second.
+     * @return the date, such as "Mon, 18 Mar 2019 15:10:24 +0000"
+     */
+    public static String signDate()
+    {
+        long second = Math.floorDiv(System.currentTimeMillis(), 1000L);
+        CachedDate cached = signDate;
+        if (cached.second != second)
+        {
+            cached = new CachedDate(second, formatHttpDate(second));
+            signDate = cached;
+        }
+        return cached.value;
+    }
+    
+    /**
+     * Format a date as in RFC-1123, with a numeric UTC offset.
+     * @param epochSecond the seconds since the epoch
+     * @return the date, such as "Mon, 18 Mar 2019 15:10:24 +0000"
+     */
+    public static String formatHttpDate(long epochSecond)
+    {
+        long days = Math.floorDiv(epochSecond, 86400L);
+        int secs = (int) Math.floorMod(epochSecond, 86400L);
+        long ymd = civil(days);
+        StringBuilder sb = new StringBuilder(31);
+        sb.append(DAYS[(int) Math.floorMod(days, 7L)]).append(", ");
+        pad(sb, day(ymd), 2).append(' ').append(MONTHS[month(ymd) - 1]).append(' ');
+        pad(sb, year(ymd), 4).append(' ');
+        time(sb, secs).append(" +0000");
+        return sb.toString();
+    }
+    
+    /**
+     * Format an instant as ISO-8601 with milliseconds.
+     * @param instant the instant
+     * @param zulu true for a "Z" suffix, false for "+0000"
+     * @return the date, such as "2019-03-18T15:10:24.000Z"
+     */
+    public static String formatIso(Instant instant, boolean zulu)
+    {
+        long epochSecond = instant.getEpochSecond();
+        long ymd = civil(Math.floorDiv(epochSecond, 86400L));
+        StringBuilder sb = new StringBuilder(28);
+        pad(sb, year(ymd), 4).append('-');
+        pad(sb, month(ymd), 2).append('-');
+        pad(sb, day(ymd), 2).append('T');
+        time(sb, (int) Math.floorMod(epochSecond, 86400L)).append('.');
+        pad(sb, instant.getNano() / 1000000, 3).append(zulu ? "Z" : "+0000");
+        return sb.toString();
+    }
+    
+    /**
+     * Parse an ISO-8601 date time, "yyyy-MM-ddTHH:mm:ss" followed by an 
+     * optional fraction of second and by "Z" or a "+hh:mm", "+hhmm" or 
+     * "+hh" offset.
+     * @param text the date
+     * @return the instant
+     * @throws DateTimeParseException if the text is not a valid date
+     */
+    public static Instant parseIso(CharSequence text)
+    {
+        try
+        {
+            int len = text.length();
+            if ((len < 20) || (text.charAt(4) != '-') || (text.charAt(7) != '-') || ((text.charAt(10) != 'T') && (text.charAt(10) != 't'))
+                    || (text.charAt(13) != ':') || (text.charAt(16) != ':'))
+            {
+                throw new DateTimeException("Not an ISO-8601 date time");
+            }
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 2);
+            int day = digits(text, 8, 2);
+            int hour = digits(text, 11, 2);
+            int minute = digits(text, 14, 2);
+            int second = digits(text, 17, 2);
+            int pos = 19;
+            int nanos = 0;
+            if (text.charAt(pos) == '.')
+            {
+                pos++;
+                int start = pos;
+                int scale = 100000000;
+                while ((pos < len) && isDigit(text.charAt(pos)))
+                {
+                    nanos += (text.charAt(pos) - '0') * scale;
+                    scale /= 10;
+                    pos++;
+                }
+                if ((pos == start) || (pos - start > 9))
+                {
+                    throw new DateTimeException("Invalid fraction of second");
+                }
+            }
+            int offset = offset(text, pos);
+            if ((month < 1) || (month > 12) || (day < 1) || (day > lengthOfMonth(year, month)) || (hour > 23) || (minute > 59) || (second > 59))
+            {
+                throw new DateTimeException("Invalid date or time");
+            }
+            long epochSecond = days(year, month, day) * 86400L + hour * 3600 + minute * 60 + second - offset;
+            return Instant.ofEpochSecond(epochSecond, nanos);
+        }
+        catch (DateTimeException ex)
+        {
+            throw new DateTimeParseException(ex.getMessage(), text, 0, ex);
+        }
+    }
+    
+    /**
+     * Parse the value of a Retry-After header, either a number of seconds 
+     * or an RFC-1123 date.
+     * @param value the header value, may be null
+     * @return the time to wait, never negative, or null if the value is 
+     * missing or not valid
+     */
+    public static Duration parseRetryAfter(String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        String text = value.trim();
+        try
+        {
+            if (!text.isEmpty() && isDigit(text.charAt(0)))
+            {
+                return Duration.ofSeconds(Long.parseLong(text));
+            }
+            Instant date = ZonedDateTime.parse(text, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            long millis = date.toEpochMilli() - System.currentTimeMillis();
+            return Duration.ofMillis(Math.max(millis, 0L));
+        }
+        catch (NumberFormatException | DateTimeException ex)
+        {
+            return null;
+        }
+    }
+    
+    private static int offset(CharSequence text, int pos)
+    {
+        int len = text.length();
+        if (pos >= len)
+        {
+            throw new DateTimeException("Missing offset");
+        }
+        char sign = text.charAt(pos);
+        if (((sign == 'Z') || (sign == 'z')) && (pos + 1 == len))
+        {
+            return 0;
+        }
+        if ((sign != '+') && (sign != '-'))
+        {
+            throw new DateTimeException("Invalid offset");
+        }
+        int seconds;
+        if (pos + 3 == len)
+        {
+            seconds = digits(text, pos + 1, 2) * 3600;
+        }
+        else if (pos + 5 == len)
+        {
+            seconds = digits(text, pos + 1, 2) * 3600 + digits(text, pos + 3, 2) * 60;
+        }
+        else if ((pos + 6 == len) && (text.charAt(pos + 3) == ':'))
+        {
+            seconds = digits(text, pos + 1, 2) * 3600 + digits(text, pos + 4, 2) * 60;
+        }
+        else
+        {
+            throw new DateTimeException("Invalid offset");
+        }
+        return (sign == '-') ? -seconds : seconds;
+    }
+    
+    private static int digits(CharSequence text, int pos, int count)
+    {
+        int retVal = 0;
+        for (int i = pos; i < pos + count; i++)
+        {
+            char c = text.charAt(i);
+            if (!isDigit(c))
+            {
+                throw new DateTimeException("Digit expected at index " + i);
+            }
+            retVal = retVal * 10 + (c - '0');
+        }
+        return retVal;
+    }
+    
+    private static boolean isDigit(char c)
+    {
+        return (c >= '0') && (c <= '9');
+    }
+    
+    private static int lengthOfMonth(int year, int month)
+    {
+        switch (month)
+        {
+            case 2:
+                return (((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0))) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+    
+    /**
+     * Days since the epoch of a civil date (proleptic Gregorian calendar).
+     */
+    private static long days(int year, int month, int day)
+    {
+        long y = (month <= 2) ? year - 1 : year;
+        long era = Math.floorDiv(y, 400L);
+        long yoe = y - era * 400;
+        long doy = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+    
+    /**
+     * The civil date of a day since the epoch, packed as year * 10000 + 
+     * month * 100 + day.
+     */
+    private static long civil(long days)
+    {
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097L);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long month = (mp < 10) ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + ((month <= 2) ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+    
+    private static int year(long ymd)
+    {
+        return (int) (ymd / 10000);
+    }
+    
+    private static int month(long ymd)
+    {
+        return (int) ((ymd / 100) % 100);
+    }
+    
+    private static int day(long ymd)
+    {
+        return (int) (ymd % 100);
+    }
+    
+    private static StringBuilder time(StringBuilder sb, int secs)
+    {
+        pad(sb, secs / 3600, 2).append(':');
+        pad(sb, (secs / 60) % 60, 2).append(':');
+        return pad(sb, secs % 60, 2);
+    }
+    
+    private static StringBuilder pad(StringBuilder sb, int value, int width)
+    {
+        for (int limit = 10, i = 1; i < width; i++, limit *= 10)
+        {
+            if (value < limit)
+            {
+                sb.append('0');
+            }
+        }
+        return sb.append(value);
+    }
+    
+    private static class CachedDate
+    {
+        private final long second;
+        private final String value;
+
+        private CachedDate(long second, String value)
+        {
+            this.second = second;
+            this.value = value;
+        }
+    }
+}
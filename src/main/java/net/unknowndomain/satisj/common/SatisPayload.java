@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * The serialized body of a call, together with its SHA-256 digest.
+ * 
+ * The JSON is written as UTF-8 straight into a byte buffer while the digest 
+ * is computed over the same stream, so the body is serialized once and 
+ * never goes through a String.
+ *
+ * @author journeyman
+ */
+public class SatisPayload
+{
+    /**
+     * The payload of the calls without a body.
+     */
+    public static final SatisPayload EMPTY = new SatisPayload(new byte[0], "47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=");
+    
+    private final byte[] body;
+    private final String digest;
+
+    private SatisPayload(byte[] body, String digest)
+    {
+        this.body = body;
+        this.digest = digest;
+    }
+    
+    /**
+     * Serialize a value as JSON.
+     * @param writer the writer used to serialize the value
+     * @param value the value to serialize
+     * @return the payload
+     * @throws IOException 
+     */
+    public static SatisPayload json(ObjectWriter writer, Object value) throws IOException
+    {
+        MessageDigest md;
+        try
+        {
+            md = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            throw new IOException(ex);
+        }
+        PayloadBuffer buffer = new PayloadBuffer();
+        writer.writeValue(new DigestOutputStream(buffer, md), value);
+        return new SatisPayload(buffer.toBody(), Base64.getEncoder().encodeToString(md.digest()));
+    }
+
+    /**
+     * The UTF-8 encoded body; shared, must not be modified.
+     * @return the body bytes
+     */
+    public byte[] getBody()
+    {
+        return body;
+    }
+
+    /**
+     * The Base64 SHA-256 digest of the body.
+     * @return the digest
+     */
+    public String getDigest()
+    {
+        return digest;
+    }
+    
+    private static class PayloadBuffer extends ByteArrayOutputStream
+    {
+        private PayloadBuffer()
+        {
+            super(512);
+        }
+        
+        private byte[] toBody()
+        {
+            return (count == buf.length) ? buf : Arrays.copyOf(buf, count);
+        }
+    }
+}
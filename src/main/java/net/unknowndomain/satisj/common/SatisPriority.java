@@ -0,0 +1,49 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+/**
+ * The priority of a call in the queues of the client: under contention 
+ * the calls of higher priority are served first, such as the payment 
+ * accepts and refunds before the bulk status refreshes.
+ * 
+ * Only the worker queue of the simple client, the adaptive limit and the 
+ * bulkheads honor it; the rate limit and the HTTP/2 streams serve the 
+ * calls in arrival order.
+ * 
+ * A waiting call ages: once it has waited the aging time of the client 
+ * for each level below HIGH, it goes ahead of the calls just queued with 
+ * a higher priority, so the low priorities are never starved.
+ *
+ * @author journeyman
+ */
+public enum SatisPriority
+{
+    HIGH,
+    NORMAL,
+    LOW;
+    
+    /**
+     * The rank of a call in a queue, lower first.
+     * @param enqueueNanos when the call was queued, from System.nanoTime()
+     * @param agingNanos the aging time for each level
+     * @return the rank, to be compared by difference as System.nanoTime()
+     */
+    public long rank(long enqueueNanos, long agingNanos)
+    {
+        return enqueueNanos + ordinal() * agingNanos;
+    }
+}
@@ -16,6 +16,7 @@
 package net.unknowndomain.satisj.common;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
  *
@@ -33,7 +34,23 @@ public class ShiftAUConverter implements AmountUnitsConverter
     @Override
     public Long getUnits(BigDecimal amount)
     {
-        return amount.movePointRight(currencyShift).longValue();
+        return toUnits(amount, RoundingMode.DOWN);
+    }
+
+    @Override
+    public long toUnits(BigDecimal amount, RoundingMode rounding)
+    {
+        BigDecimal units = amount.movePointRight(currencyShift);
+        if (units.scale() > 0)
+        {
+            units = units.setScale(0, rounding);
+        }
+        return units.longValueExact();
+    }
+    
+    public int getCurrencyShift()
+    {
+        return currencyShift;
     }
     
 }
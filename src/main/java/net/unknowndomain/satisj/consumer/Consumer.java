@@ -17,6 +17,12 @@ package net.unknowndomain.satisj.consumer;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import java.io.IOException;
+import net.unknowndomain.satisj.common.JsonStreams;
 import net.unknowndomain.satisj.common.SatisJsonObject;
 
 /**
@@ -39,4 +45,36 @@ public class Consumer extends SatisJsonObject
         return id;
     }
     
+    /**
+     * Streaming deserializer, used instead of reflection by the client codec.
+     */
+    public static class Deserializer extends StdDeserializer<Consumer>
+    {
+        public static final Deserializer INSTANCE = new Deserializer();
+        
+        public Deserializer()
+        {
+            super(Consumer.class);
+        }
+
+        @Override
+        public Consumer deserialize(JsonParser p, DeserializationContext ctxt) throws IOException
+        {
+            Consumer retVal = new Consumer();
+            for (JsonToken token = JsonStreams.firstField(p); token == JsonToken.FIELD_NAME; token = p.nextToken())
+            {
+                String name = p.currentName();
+                p.nextToken();
+                switch (name)
+                {
+                    case "id":
+                        retVal.id = p.getValueAsString();
+                        break;
+                    default:
+                        p.skipChildren();
+                }
+            }
+            return retVal;
+        }
+    }
 }
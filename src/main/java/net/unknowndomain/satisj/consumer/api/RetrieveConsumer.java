@@ -18,6 +18,7 @@ package net.unknowndomain.satisj.consumer.api;
 import net.unknowndomain.satisj.Environment;
 import net.unknowndomain.satisj.common.SatisApi;
 import net.unknowndomain.satisj.common.SatisApiCall;
+import net.unknowndomain.satisj.common.SatisApiGroup;
 import net.unknowndomain.satisj.consumer.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,11 +38,6 @@ public class RetrieveConsumer extends SatisApiCall<Consumer> {
         this.phoneNumber = phoneNumber;
     }
     
-    @Override
-    public String getBody() {
-        return "";
-    }
-
     public String getPhoneNumber()
     {
         return phoneNumber;
@@ -52,6 +48,11 @@ public class RetrieveConsumer extends SatisApiCall<Consumer> {
         return "GET";
     }
 
+    @Override
+    public SatisApiGroup getGroup() {
+        return SatisApiGroup.CONSUMER;
+    }
+
     @Override
     protected String getEndpoint(Environment env) {
         return env.getEndpoint().getPath() + "/v1/consumers/"+ phoneNumber;
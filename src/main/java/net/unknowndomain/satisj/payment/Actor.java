@@ -17,6 +17,12 @@ package net.unknowndomain.satisj.payment;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import java.io.IOException;
+import net.unknowndomain.satisj.common.JsonStreams;
 
 /**
  *
@@ -46,4 +52,43 @@ public class Actor
     {
         return type;
     }
+    
+    /**
+     * Streaming deserializer, used instead of reflection by the client codec.
+     */
+    public static class Deserializer extends StdDeserializer<Actor>
+    {
+        public static final Deserializer INSTANCE = new Deserializer();
+        
+        public Deserializer()
+        {
+            super(Actor.class);
+        }
+
+        @Override
+        public Actor deserialize(JsonParser p, DeserializationContext ctxt) throws IOException
+        {
+            Actor retVal = new Actor();
+            for (JsonToken token = JsonStreams.firstField(p); token == JsonToken.FIELD_NAME; token = p.nextToken())
+            {
+                String name = p.currentName();
+                p.nextToken();
+                switch (name)
+                {
+                    case "id":
+                        retVal.id = p.getValueAsString();
+                        break;
+                    case "name":
+                        retVal.name = p.getValueAsString();
+                        break;
+                    case "type":
+                        retVal.type = JsonStreams.readEnum(p, ctxt, ActorType.class);
+                        break;
+                    default:
+                        p.skipChildren();
+                }
+            }
+            return retVal;
+        }
+    }
 }
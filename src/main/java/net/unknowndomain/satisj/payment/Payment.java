@@ -15,11 +15,20 @@
  */
 package net.unknowndomain.satisj.payment;
 
-import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import java.io.IOException;
+import java.time.Instant;
 import java.util.Date;
 import java.util.Map;
+import net.unknowndomain.satisj.common.JsonStreams;
 import net.unknowndomain.satisj.common.SatisJsonObject;
 
 /**
@@ -52,11 +61,13 @@ public class Payment extends SatisJsonObject
     @JsonProperty("metadata")
     private Map<String, String> metadata;
     @JsonProperty("insert_date")
-    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", timezone = "UTC")
-    private Date insertDate;
+    @JsonSerialize(using = JsonStreams.InstantSerializer.class)
+    @JsonDeserialize(using = JsonStreams.InstantDeserializer.class)
+    private Instant insertDate;
     @JsonProperty("expire_date")
-    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", timezone = "UTC")
-    private Date expireDate;
+    @JsonSerialize(using = JsonStreams.InstantSerializer.class)
+    @JsonDeserialize(using = JsonStreams.InstantDeserializer.class)
+    private Instant expireDate;
     @JsonProperty("external_code")
     private String externalCode;
     @JsonProperty("redirect_url")
@@ -115,12 +126,26 @@ public class Payment extends SatisJsonObject
         return metadata;
     }
 
+    @JsonIgnore
     public Date getInsertDate()
+    {
+        return (insertDate != null) ? Date.from(insertDate) : null;
+    }
+
+    @JsonIgnore
+    public Instant getInsertInstant()
     {
         return insertDate;
     }
 
+    @JsonIgnore
     public Date getExpireDate()
+    {
+        return (expireDate != null) ? Date.from(expireDate) : null;
+    }
+
+    @JsonIgnore
+    public Instant getExpireInstant()
     {
         return expireDate;
     }
@@ -154,4 +179,82 @@ public class Payment extends SatisJsonObject
     {
         return sender;
     }
+    
+    /**
+     * Streaming deserializer, used instead of reflection by the client codec.
+     */
+    public static class Deserializer extends StdDeserializer<Payment>
+    {
+        public static final Deserializer INSTANCE = new Deserializer();
+        
+        public Deserializer()
+        {
+            super(Payment.class);
+        }
+
+        @Override
+        public Payment deserialize(JsonParser p, DeserializationContext ctxt) throws IOException
+        {
+            Payment retVal = new Payment();
+            for (JsonToken token = JsonStreams.firstField(p); token == JsonToken.FIELD_NAME; token = p.nextToken())
+            {
+                String name = p.currentName();
+                p.nextToken();
+                switch (name)
+                {
+                    case "id":
+                        retVal.id = p.getValueAsString();
+                        break;
+                    case "code_identifier":
+                        retVal.codeIdentifier = p.getValueAsString();
+                        break;
+                    case "amount_unit":
+                        retVal.amountUnit = JsonStreams.readLong(p);
+                        break;
+                    case "currency":
+                        retVal.currency = p.getValueAsString();
+                        break;
+                    case "type":
+                        retVal.type = JsonStreams.readEnum(p, ctxt, PaymentType.class);
+                        break;
+                    case "status":
+                        retVal.status = JsonStreams.readEnum(p, ctxt, PaymentStatus.class);
+                        break;
+                    case "expired":
+                        retVal.expired = p.getValueAsBoolean();
+                        break;
+                    case "metadata":
+                        retVal.metadata = JsonStreams.readStringMap(p, ctxt);
+                        break;
+                    case "insert_date":
+                        retVal.insertDate = JsonStreams.readInstant(p, ctxt);
+                        break;
+                    case "expire_date":
+                        retVal.expireDate = JsonStreams.readInstant(p, ctxt);
+                        break;
+                    case "external_code":
+                        retVal.externalCode = p.getValueAsString();
+                        break;
+                    case "redirect_url":
+                        retVal.redirectUrl = p.getValueAsString();
+                        break;
+                    case "status_ownership":
+                        retVal.statusOwnership = p.getValueAsBoolean();
+                        break;
+                    case "status_owner":
+                        retVal.statusOwner = (p.currentToken() == JsonToken.VALUE_NULL) ? null : Actor.Deserializer.INSTANCE.deserialize(p, ctxt);
+                        break;
+                    case "receiver":
+                        retVal.receiver = (p.currentToken() == JsonToken.VALUE_NULL) ? null : Actor.Deserializer.INSTANCE.deserialize(p, ctxt);
+                        break;
+                    case "sender":
+                        retVal.sender = (p.currentToken() == JsonToken.VALUE_NULL) ? null : Actor.Deserializer.INSTANCE.deserialize(p, ctxt);
+                        break;
+                    default:
+                        p.skipChildren();
+                }
+            }
+            return retVal;
+        }
+    }
 }
@@ -15,17 +15,26 @@
  */
 package net.unknowndomain.satisj.payment.api;
 
-import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 import net.unknowndomain.satisj.Environment;
+import net.unknowndomain.satisj.common.JsonStreams;
 import net.unknowndomain.satisj.common.SatisApi;
 import net.unknowndomain.satisj.common.SatisApiCall;
+import net.unknowndomain.satisj.common.SatisApiGroup;
+import net.unknowndomain.satisj.common.SatisPayload;
 import net.unknowndomain.satisj.payment.Payment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,8 +68,9 @@ public class CreatePayment extends SatisApiCall<Payment> {
     @JsonProperty("metadata")
     private final Map<String, String> metadata;
     @JsonProperty("expiration_date")
-    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSZ", timezone = "UTC")
-    private final Date expirationDate;
+    @JsonSerialize(using = JsonStreams.OffsetInstantSerializer.class)
+    @JsonDeserialize(using = JsonStreams.InstantDeserializer.class)
+    private final Instant expirationDate;
     @JsonIgnore
     private final BigDecimal amount;
     
@@ -68,6 +78,7 @@ public class CreatePayment extends SatisApiCall<Payment> {
             SatisApi api,
             String flow, 
             BigDecimal amount,
+            Long amountUnit,
             String currency,
             String preAuthorizedPaymentsToken,
             String parentPaymentUid,
@@ -75,7 +86,7 @@ public class CreatePayment extends SatisApiCall<Payment> {
             String externalCode,
             String callbackUrl,
             String redirectUrl,
-            Date expirationDate,
+            Instant expirationDate,
             Map<String, String> metadata
             )
     {
@@ -90,23 +101,13 @@ public class CreatePayment extends SatisApiCall<Payment> {
         this.externalCode = externalCode;
         this.callbackUrl = callbackUrl;
         this.redirectUrl = redirectUrl;
-        this.amountUnit = SatisApi.Tools.getUnits(currency, amount);
-        this.metadata = Collections.unmodifiableMap(metadata);
+        this.amountUnit = (amountUnit != null) ? amountUnit : SatisApi.Tools.getUnits(currency, amount);
+        this.metadata = Collections.unmodifiableMap(new HashMap<>(metadata));
     }
     
     @Override
-    @JsonIgnore
-    public String getBody() {
-        String body = "";
-        try
-        {
-            body = SatisApi.Tools.JSON_MAPPER.writeValueAsString(this);
-        }
-        catch (JsonProcessingException ex)
-        {
-            LOGGER.error(null, ex);
-        }
-        return body;
+    protected SatisPayload writePayload() throws IOException {
+        return writeJson();
     }
 
     @Override
@@ -115,6 +116,12 @@ public class CreatePayment extends SatisApiCall<Payment> {
         return "POST";
     }
 
+    @Override
+    @JsonIgnore
+    public SatisApiGroup getGroup() {
+        return SatisApiGroup.PAYMENT;
+    }
+
     @Override
     @JsonIgnore
     protected String getEndpoint(Environment env) {
@@ -137,7 +144,14 @@ public class CreatePayment extends SatisApiCall<Payment> {
 //        return payment;
 //    }
 
+    @JsonIgnore
     public Date getExpirationDate()
+    {
+        return (expirationDate != null) ? Date.from(expirationDate) : null;
+    }
+
+    @JsonIgnore
+    public Instant getExpirationInstant()
     {
         return expirationDate;
     }
@@ -192,9 +206,41 @@ public class CreatePayment extends SatisApiCall<Payment> {
         return metadata;
     }
 
+    /**
+     * The amount of the payment.
+     * @return the amount, or null if it was set in minor units
+     */
     public BigDecimal getAmount()
     {
         return amount;
     }
     
+    /**
+     * Streaming serializer, used instead of reflection by the client codec.
+     */
+    public static class Serializer extends StdSerializer<CreatePayment>
+    {
+        public Serializer()
+        {
+            super(CreatePayment.class);
+        }
+
+        @Override
+        public void serialize(CreatePayment value, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+            JsonStreams.writeString(gen, "flow", value.flow);
+            JsonStreams.writeNumber(gen, "amount_unit", value.amountUnit);
+            JsonStreams.writeString(gen, "currency", value.currency);
+            JsonStreams.writeString(gen, "pre_authorized_payments_token", value.preAuthorizedPaymentsToken);
+            JsonStreams.writeString(gen, "parent_payment_uid", value.parentPaymentId);
+            JsonStreams.writeString(gen, "consumer_uid", value.consumerId);
+            JsonStreams.writeString(gen, "external_code", value.externalCode);
+            JsonStreams.writeString(gen, "callback_url", value.callbackUrl);
+            JsonStreams.writeString(gen, "redirect_url", value.redirectUrl);
+            JsonStreams.writeStringMap(gen, "metadata", value.metadata);
+            JsonStreams.writeInstant(gen, "expiration_date", value.expirationDate, false);
+            gen.writeEndObject();
+        }
+    }
 }
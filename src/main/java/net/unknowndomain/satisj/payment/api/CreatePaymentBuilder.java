@@ -16,6 +16,7 @@
 package net.unknowndomain.satisj.payment.api;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -31,6 +32,7 @@ public class CreatePaymentBuilder extends SatisCallBuilder<CreatePayment>
 {
     private String flow = "MATCH_CODE";
     private BigDecimal amount = BigDecimal.ZERO;
+    private Long amountUnit;
     private String currency = "EUR";
     private String preAuthorizedPaymentsToken;
     private String parentPaymentUid;
@@ -38,7 +40,7 @@ public class CreatePaymentBuilder extends SatisCallBuilder<CreatePayment>
     private String externalCode;
     private String callbackUrl;
     private String redirectUrl;
-    private Date expirationDate;
+    private Instant expirationDate;
     private Map<String, String> metadata = new HashMap<>();
     
     public CreatePaymentBuilder(SatisApi api)
@@ -122,6 +124,20 @@ public class CreatePaymentBuilder extends SatisCallBuilder<CreatePayment>
     public CreatePaymentBuilder amount(BigDecimal amount)
     {
         this.amount = amount;
+        this.amountUnit = null;
+        return this;
+    }
+    
+    /**
+     * Sets the amount already converted to the minor unit of the currency, 
+     * skipping the conversion of {@link #amount(java.math.BigDecimal)}.
+     * @param amountUnit Amount of the payment in minor units (e.g. cents)
+     * @return this builder
+     */
+    public CreatePaymentBuilder amountUnit(long amountUnit)
+    {
+        this.amountUnit = amountUnit;
+        this.amount = null;
         return this;
     }
     
@@ -182,6 +198,17 @@ public class CreatePaymentBuilder extends SatisCallBuilder<CreatePayment>
      * @return this builder.
      */
     public CreatePaymentBuilder expirationDate(Date expirationDate)
+    {
+        this.expirationDate = (expirationDate != null) ? expirationDate.toInstant() : null;
+        return this;
+    }
+    
+    /**
+     * Sets the transaction's expiration date of the CreatePayment.
+     * @param expirationDate The expiration date of the payment
+     * @return this builder.
+     */
+    public CreatePaymentBuilder expirationDate(Instant expirationDate)
     {
         this.expirationDate = expirationDate;
         return this;
@@ -202,6 +229,9 @@ public class CreatePaymentBuilder extends SatisCallBuilder<CreatePayment>
     @Override
     public CreatePayment build()
     {
-        return new CreatePayment(api, flow, amount, currency, preAuthorizedPaymentsToken, parentPaymentUid, consumerUid, externalCode, callbackUrl, redirectUrl, expirationDate, metadata);
+        CreatePayment retVal = new CreatePayment(api, flow, amount, amountUnit, currency, preAuthorizedPaymentsToken, parentPaymentUid, consumerUid, externalCode, callbackUrl, redirectUrl, expirationDate, metadata);
+        // creating the payment after its expiration is useless
+        retVal.deadline(expirationDate);
+        return retVal;
     }
 }
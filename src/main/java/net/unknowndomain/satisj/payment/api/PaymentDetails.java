@@ -18,6 +18,7 @@ package net.unknowndomain.satisj.payment.api;
 import net.unknowndomain.satisj.Environment;
 import net.unknowndomain.satisj.common.SatisApi;
 import net.unknowndomain.satisj.common.SatisApiCall;
+import net.unknowndomain.satisj.common.SatisApiGroup;
 import net.unknowndomain.satisj.payment.Payment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,13 +40,13 @@ public class PaymentDetails extends SatisApiCall<Payment> {
     }
     
     @Override
-    public String getBody() {
-        return "";
+    public String getMethod() {
+        return "GET";
     }
 
     @Override
-    public String getMethod() {
-        return "GET";
+    public SatisApiGroup getGroup() {
+        return SatisApiGroup.PAYMENT;
     }
 
     @Override
@@ -17,13 +17,20 @@ package net.unknowndomain.satisj.payment.api;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import net.unknowndomain.satisj.Environment;
+import net.unknowndomain.satisj.common.JsonStreams;
 import net.unknowndomain.satisj.common.SatisApi;
 import net.unknowndomain.satisj.common.SatisApiCall;
+import net.unknowndomain.satisj.common.SatisApiGroup;
+import net.unknowndomain.satisj.common.SatisPayload;
 import net.unknowndomain.satisj.payment.Payment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +60,7 @@ public class UpdatePayment extends SatisApiCall<Payment> {
             SatisApi api,
             String id, 
             BigDecimal amount,
+            Long amountUnit,
             String currency,
             String action,
             Map<String, String> metadata
@@ -63,23 +71,13 @@ public class UpdatePayment extends SatisApiCall<Payment> {
         this.amount = amount;
         this.currency = currency;
         this.action = action;
-        this.amountUnit = SatisApi.Tools.getUnits(currency, amount);
-        this.metadata = Collections.unmodifiableMap(metadata);
+        this.amountUnit = (amountUnit != null) ? amountUnit : SatisApi.Tools.getUnits(currency, amount);
+        this.metadata = Collections.unmodifiableMap(new HashMap<>(metadata));
     }
     
     @Override
-    @JsonIgnore
-    public String getBody() {
-        String body = "";
-        try
-        {
-            body = SatisApi.Tools.JSON_MAPPER.writeValueAsString(this);
-        }
-        catch (JsonProcessingException ex)
-        {
-            LOGGER.error(null, ex);
-        }
-        return body;
+    protected SatisPayload writePayload() throws IOException {
+        return writeJson();
     }
 
     @Override
@@ -88,6 +86,12 @@ public class UpdatePayment extends SatisApiCall<Payment> {
         return "PUT";
     }
 
+    @Override
+    @JsonIgnore
+    public SatisApiGroup getGroup() {
+        return SatisApiGroup.PAYMENT;
+    }
+
     @Override
     @JsonIgnore
     protected String getEndpoint(Environment env) {
@@ -120,6 +124,10 @@ public class UpdatePayment extends SatisApiCall<Payment> {
         return metadata;
     }
 
+    /**
+     * The amount of the payment.
+     * @return the amount, or null if it was set in minor units
+     */
     public BigDecimal getAmount()
     {
         return amount;
@@ -140,4 +148,24 @@ public class UpdatePayment extends SatisApiCall<Payment> {
         return currency;
     }
     
+    /**
+     * Streaming serializer, used instead of reflection by the client codec.
+     */
+    public static class Serializer extends StdSerializer<UpdatePayment>
+    {
+        public Serializer()
+        {
+            super(UpdatePayment.class);
+        }
+
+        @Override
+        public void serialize(UpdatePayment value, JsonGenerator gen, SerializerProvider provider) throws IOException
+        {
+            gen.writeStartObject();
+            JsonStreams.writeString(gen, "action", value.action);
+            JsonStreams.writeNumber(gen, "amount_unit", value.amountUnit);
+            JsonStreams.writeStringMap(gen, "metadata", value.metadata);
+            gen.writeEndObject();
+        }
+    }
 }
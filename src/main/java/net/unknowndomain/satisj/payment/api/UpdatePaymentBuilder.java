@@ -34,6 +34,7 @@ public class UpdatePaymentBuilder extends SatisCallBuilder<UpdatePayment>
     
     private String action = "";
     private BigDecimal amount = BigDecimal.ZERO;
+    private Long amountUnit;
     private String currency = "EUR";
     private String id = "";
     private Map<String, String> metadata = new HashMap<>();
@@ -87,6 +88,20 @@ public class UpdatePaymentBuilder extends SatisCallBuilder<UpdatePayment>
     public UpdatePaymentBuilder amount(BigDecimal amount)
     {
         this.amount = amount;
+        this.amountUnit = null;
+        return this;
+    }
+    
+    /**
+     * Sets the amount already converted to the minor unit of the currency, 
+     * skipping the conversion of {@link #amount(java.math.BigDecimal)}.
+     * @param amountUnit Amount of the payment in minor units (e.g. cents)
+     * @return this builder
+     */
+    public UpdatePaymentBuilder amountUnit(long amountUnit)
+    {
+        this.amountUnit = amountUnit;
+        this.amount = null;
         return this;
     }
     
@@ -117,6 +132,6 @@ public class UpdatePaymentBuilder extends SatisCallBuilder<UpdatePayment>
     @Override
     public UpdatePayment build()
     {
-        return new UpdatePayment(api, id, amount, currency, action, metadata);
+        return new UpdatePayment(api, id, amount, amountUnit, currency, action, metadata);
     }
 }
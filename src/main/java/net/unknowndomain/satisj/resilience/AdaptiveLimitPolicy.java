@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.time.Duration;
+
+/**
+ * The settings of the adaptive limit of the requests in flight.
+ * 
+ * The limit follows an AIMD (additive increase, multiplicative decrease) 
+ * scheme driven by the latency: it grows by about one for each round of 
+ * successful requests and is cut by backoffRatio when a request is 
+ * dropped (an I/O error, a 429 or 503) or when the recent average latency 
+ * exceeds latencyTolerance times the latency observed without load.
+ * The requests over the limit wait in the client, up to maxQueue of them.
+ *
+ * @author journeyman
+ */
+public class AdaptiveLimitPolicy
+{
+    private int initialLimit = 20;
+    private int minLimit = 1;
+    private int maxLimit = 200;
+    private double backoffRatio = 0.9;
+    private double latencyTolerance = 2.0;
+    private int maxQueue = 1000;
+    private Duration queueTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Sets the limit used before any latency is observed.
+     * @param initialLimit the initial limit
+     * @return this policy
+     */
+    public AdaptiveLimitPolicy initialLimit(int initialLimit)
+    {
+        this.initialLimit = initialLimit;
+        return this;
+    }
+
+    /**
+     * Sets the lowest limit.
+     * @param minLimit the minimum number of requests in flight
+     * @return this policy
+     */
+    public AdaptiveLimitPolicy minLimit(int minLimit)
+    {
+        this.minLimit = minLimit;
+        return this;
+    }
+
+    /**
+     * Sets the highest limit.
+     * @param maxLimit the maximum number of requests in flight
+     * @return this policy
+     */
+    public AdaptiveLimitPolicy maxLimit(int maxLimit)
+    {
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    /**
+     * Sets how much the limit is cut on a drop or a latency spike.
+     * @param backoffRatio the factor applied to the limit, between 0 and 1
+     * @return this policy
+     */
+    public AdaptiveLimitPolicy backoffRatio(double backoffRatio)
+    {
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    /**
+     * Sets how much the recent latency may exceed the latency observed
+     * without load before the limit is cut.
+     * @param latencyTolerance the ratio between the two latencies
+     * @return this policy
+     */
+    public AdaptiveLimitPolicy latencyTolerance(double latencyTolerance)
+    {
+        this.latencyTolerance = latencyTolerance;
+        return this;
+    }
+
+    /**
+     * Sets how many requests may wait for the limit; beyond that the 
+     * calls fail with a ConcurrencyLimitException.
+     * @param maxQueue the capacity of the waiting queue
+     * @return this policy
+     */
+    public AdaptiveLimitPolicy maxQueue(int maxQueue)
+    {
+        this.maxQueue = maxQueue;
+        return this;
+    }
+
+    /**
+     * Sets how long SatisSimpleClient blocks a caller waiting for the limit.
+     * @param queueTimeout the longest wait
+     * @return this policy
+     */
+    public AdaptiveLimitPolicy queueTimeout(Duration queueTimeout)
+    {
+        this.queueTimeout = queueTimeout;
+        return this;
+    }
+
+    public int getInitialLimit()
+    {
+        return initialLimit;
+    }
+
+    public int getMinLimit()
+    {
+        return minLimit;
+    }
+
+    public int getMaxLimit()
+    {
+        return maxLimit;
+    }
+
+    public double getBackoffRatio()
+    {
+        return backoffRatio;
+    }
+
+    public double getLatencyTolerance()
+    {
+        return latencyTolerance;
+    }
+
+    public int getMaxQueue()
+    {
+        return maxQueue;
+    }
+
+    public Duration getQueueTimeout()
+    {
+        return queueTimeout;
+    }
+}
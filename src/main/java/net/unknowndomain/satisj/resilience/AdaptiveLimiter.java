@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
+import java.time.Duration;
+import net.unknowndomain.satisj.common.SatisApiException;
+
+/**
+ * Limits the requests in flight to a limit adapted to the latency, as 
+ * described by {@link AdaptiveLimitPolicy}; the requests over the limit 
+ * wait in the priority queue of {@link ConcurrencyLimiter}.
+ * 
+ * Each request acquires a slot and, once completed, releases it with its 
+ * latency and outcome.
+ *
+ * @author journeyman
+ */
+public class AdaptiveLimiter extends ConcurrencyLimiter
+{
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 0.005;
+    
+    private final AdaptiveLimitPolicy policy;
+    private double limit;
+    private double shortRtt = -1;
+    private double baseRtt = -1;
+    private long lastDecrease = System.nanoTime();
+
+    public AdaptiveLimiter(AdaptiveLimitPolicy policy, Duration priorityAging)
+    {
+        super(policy.getMaxQueue(), priorityAging);
+        this.policy = policy;
+        this.limit = policy.getInitialLimit();
+    }
+    
+    /**
+     * Releases the slot of a completed request, adapting the limit.
+     * @param rttNanos the latency of the request
+     * @param failure the failure of the request, or null if it succeeded
+     */
+    public void release(long rttNanos, Throwable failure)
+    {
+        if (isDrop(failure))
+        {
+            adapt(rttNanos, true);
+        }
+        else if ((failure == null) || ((failure instanceof SatisApiException) && (((SatisApiException) failure).getStatus() > 0)))
+        {
+            adapt(rttNanos, false);
+        }
+        release();
+    }
+    
+    private synchronized void adapt(long rttNanos, boolean dropped)
+    {
+        long now = System.nanoTime();
+        shortRtt = (shortRtt < 0) ? rttNanos : shortRtt + SHORT_WEIGHT * (rttNanos - shortRtt);
+        if ((baseRtt < 0) || (rttNanos < baseRtt))
+        {
+            baseRtt = rttNanos;
+        }
+        else if ((rttNanos <= baseRtt * policy.getLatencyTolerance()) || ((int) limit <= policy.getMinLimit()))
+        {
+            // queueing must not raise the baseline, a slower server must
+            baseRtt += LONG_WEIGHT * (rttNanos - baseRtt);
+        }
+        if (dropped || (shortRtt > baseRtt * policy.getLatencyTolerance()))
+        {
+            // cut once for each round of requests, not for every request of the round
+            if (now - rttNanos - lastDecrease > 0)
+            {
+                limit = Math.max(policy.getMinLimit(), limit * policy.getBackoffRatio());
+                lastDecrease = now;
+            }
+        }
+        else if (getInFlight() * 2 >= limit)
+        {
+            limit = Math.min(policy.getMaxLimit(), limit + 1.0 / limit);
+        }
+    }
+    
+    private static boolean isDrop(Throwable failure)
+    {
+        if (failure instanceof SatisApiException)
+        {
+            int status = ((SatisApiException) failure).getStatus();
+            return (status == 429) || (status == 503);
+        }
+        return (failure instanceof IOException) && !(failure instanceof JsonProcessingException);
+    }
+    
+    @Override
+    public synchronized int getLimit()
+    {
+        return (int) limit;
+    }
+}
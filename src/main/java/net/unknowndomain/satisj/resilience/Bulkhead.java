@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.time.Duration;
+import net.unknowndomain.satisj.common.SatisApiGroup;
+
+/**
+ * The concurrency permits of a group of endpoints, as described by 
+ * {@link BulkheadPolicy}.
+ * 
+ * A call holds its permit from its first attempt to its completion; the 
+ * in-flight count, queue length and rejected count tell how saturated the 
+ * group is.
+ *
+ * @author journeyman
+ */
+public class Bulkhead extends ConcurrencyLimiter
+{
+    private final SatisApiGroup group;
+    private final BulkheadPolicy policy;
+
+    public Bulkhead(SatisApiGroup group, BulkheadPolicy policy, Duration priorityAging)
+    {
+        super(policy.getMaxQueue(), priorityAging);
+        this.group = group;
+        this.policy = policy;
+    }
+    
+    /**
+     * The failure of a call which could not get a permit.
+     * @return the exception to report
+     */
+    public BulkheadFullException full()
+    {
+        return new BulkheadFullException(group, getLimit(), getQueueLength());
+    }
+
+    @Override
+    public int getLimit()
+    {
+        return policy.getMaxConcurrentCalls();
+    }
+
+    public SatisApiGroup getGroup()
+    {
+        return group;
+    }
+
+    public BulkheadPolicy getPolicy()
+    {
+        return policy;
+    }
+}
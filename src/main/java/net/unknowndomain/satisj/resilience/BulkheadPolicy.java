@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.time.Duration;
+
+/**
+ * The settings of the bulkhead of a group of endpoints, which isolates its 
+ * calls from the calls of the other groups.
+ * 
+ * At most maxConcurrentCalls calls of the group run at once, retries 
+ * included; the others wait in the client, up to maxQueue of them, 
+ * without holding a worker thread or a connection. With maxConnections 
+ * the group also gets its own connection pool, so a burst of calls on 
+ * another group cannot take its connections.
+ *
+ * @author journeyman
+ */
+public class BulkheadPolicy
+{
+    private int maxConcurrentCalls = 10;
+    private int maxQueue = 100;
+    private Duration queueTimeout = Duration.ofSeconds(5);
+    private int maxConnections = 0;
+
+    /**
+     * Sets how many calls of the group run at once.
+     * @param maxConcurrentCalls the number of concurrency permits
+     * @return this policy
+     */
+    public BulkheadPolicy maxConcurrentCalls(int maxConcurrentCalls)
+    {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        return this;
+    }
+
+    /**
+     * Sets how many calls may wait for a permit; beyond that the calls 
+     * fail with a BulkheadFullException.
+     * @param maxQueue the capacity of the waiting queue
+     * @return this policy
+     */
+    public BulkheadPolicy maxQueue(int maxQueue)
+    {
+        this.maxQueue = maxQueue;
+        return this;
+    }
+
+    /**
+     * Sets how long a caller of execute() blocks waiting for a permit.
+     * @param queueTimeout the longest wait
+     * @return this policy
+     */
+    public BulkheadPolicy queueTimeout(Duration queueTimeout)
+    {
+        this.queueTimeout = queueTimeout;
+        return this;
+    }
+
+    /**
+     * Gives the group its own connection pool of this size, instead of 
+     * the pool shared by the client. Enforced by the Apache transports; 
+     * the JDK HttpClient has no pool limit, only a separate client.
+     * Defaults to 0, the shared pool.
+     * @param maxConnections the connection quota of the group
+     * @return this policy
+     */
+    public BulkheadPolicy maxConnections(int maxConnections)
+    {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public int getMaxConcurrentCalls()
+    {
+        return maxConcurrentCalls;
+    }
+
+    public int getMaxQueue()
+    {
+        return maxQueue;
+    }
+
+    public Duration getQueueTimeout()
+    {
+        return queueTimeout;
+    }
+
+    public int getMaxConnections()
+    {
+        return maxConnections;
+    }
+}
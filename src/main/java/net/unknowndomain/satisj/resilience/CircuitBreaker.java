@@ -0,0 +1,263 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
+import net.unknowndomain.satisj.common.SatisApiException;
+import net.unknowndomain.satisj.common.SatisApiGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The circuit breaker of a group of endpoints, as described by 
+ * {@link CircuitBreakerPolicy}.
+ * 
+ * Each attempt of a call first acquires a permission, then reports its 
+ * outcome with {@link #onSuccess(long)} or {@link #onError(long, Throwable)}.
+ *
+ * @author journeyman
+ */
+public class CircuitBreaker
+{
+    private final static Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+    
+    public enum State
+    {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+    
+    private static final int FAILED = 1;
+    private static final int SLOW = 2;
+    
+    private final SatisApiGroup group;
+    private final CircuitBreakerPolicy policy;
+    private final long slowCallNanos;
+    private final byte[] window;
+    private int windowPos;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+    private volatile State state = State.CLOSED;
+    private long openUntil;
+    private int probes;
+
+    public CircuitBreaker(SatisApiGroup group, CircuitBreakerPolicy policy)
+    {
+        this.group = group;
+        this.policy = policy;
+        this.slowCallNanos = policy.getSlowCallDuration().toNanos();
+        this.window = new byte[Math.max(policy.getWindowSize(), 1)];
+    }
+    
+    /**
+     * Acquires the permission to send an attempt.
+     * @throws CircuitBreakerOpenException if the breaker is open, or half 
+     * open with all its probes in flight
+     */
+    public void acquirePermission() throws CircuitBreakerOpenException
+    {
+        State from;
+        State to;
+        boolean permitted;
+        synchronized (this)
+        {
+            from = state;
+            if (from == State.CLOSED)
+            {
+                return;
+            }
+            if ((from == State.OPEN) && (System.nanoTime() - openUntil >= 0))
+            {
+                transition(State.HALF_OPEN);
+            }
+            to = state;
+            permitted = (to == State.HALF_OPEN) && (probes < policy.getHalfOpenCalls());
+            if (permitted)
+            {
+                probes++;
+            }
+        }
+        notifyChange(from, to);
+        if (!permitted)
+        {
+            throw new CircuitBreakerOpenException(group);
+        }
+    }
+    
+    /**
+     * Records a call which got a response.
+     * @param durationNanos the duration of the call
+     */
+    public void onSuccess(long durationNanos)
+    {
+        record(durationNanos, false);
+    }
+    
+    /**
+     * Records a failed call: I/O errors and 5xx responses count as failures, 
+     * other responses as successes, and other errors, which happen before 
+     * the request is sent or after the response is read, are not recorded.
+     * @param durationNanos the duration of the call
+     * @param failure the failure of the call
+     */
+    public void onError(long durationNanos, Throwable failure)
+    {
+        if (failure instanceof SatisApiException)
+        {
+            int status = ((SatisApiException) failure).getStatus();
+            if (status > 0)
+            {
+                record(durationNanos, status >= 500);
+                return;
+            }
+        }
+        else if ((failure instanceof IOException) && !(failure instanceof JsonProcessingException))
+        {
+            record(durationNanos, true);
+            return;
+        }
+        release();
+    }
+    
+    /**
+     * Gives back a permission without recording an outcome.
+     */
+    public synchronized void release()
+    {
+        if ((state == State.HALF_OPEN) && (probes > 0))
+        {
+            probes--;
+        }
+    }
+    
+    private void record(long durationNanos, boolean failed)
+    {
+        State from;
+        State to;
+        synchronized (this)
+        {
+            from = state;
+            if (from == State.OPEN)
+            {
+                return;
+            }
+            int outcome = (failed ? FAILED : 0) | ((durationNanos > slowCallNanos) ? SLOW : 0);
+            if (calls == window.length)
+            {
+                int oldest = window[windowPos];
+                failures -= oldest & FAILED;
+                slowCalls -= (oldest & SLOW) >> 1;
+            }
+            else
+            {
+                calls++;
+            }
+            window[windowPos] = (byte) outcome;
+            windowPos = (windowPos + 1) % window.length;
+            failures += outcome & FAILED;
+            slowCalls += (outcome & SLOW) >> 1;
+            if (from == State.HALF_OPEN)
+            {
+                if (calls >= Math.min(policy.getHalfOpenCalls(), window.length))
+                {
+                    transition(isOverThreshold() ? State.OPEN : State.CLOSED);
+                }
+            }
+            else if ((calls >= policy.getMinimumCalls()) && isOverThreshold())
+            {
+                transition(State.OPEN);
+            }
+            to = state;
+        }
+        notifyChange(from, to);
+    }
+    
+    private boolean isOverThreshold()
+    {
+        return (failures >= policy.getFailureRateThreshold() * calls) 
+                || (slowCalls >= policy.getSlowCallRateThreshold() * calls);
+    }
+    
+    /**
+     * Moves to a new state, starting a fresh window: the probes of the 
+     * half-open state are evaluated on their own.
+     */
+    private void transition(State to)
+    {
+        state = to;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+        windowPos = 0;
+        probes = 0;
+        if (to == State.OPEN)
+        {
+            openUntil = System.nanoTime() + policy.getOpenDuration().toNanos();
+        }
+    }
+    
+    private void notifyChange(State from, State to)
+    {
+        if (from == to)
+        {
+            return;
+        }
+        LOGGER.warn("Circuit breaker of the {} endpoints: {} -> {}", group, from, to);
+        CircuitBreakerListener listener = policy.getListener();
+        if (listener != null)
+        {
+            try
+            {
+                listener.onStateChange(group, from, to);
+            }
+            catch (RuntimeException ex)
+            {
+                LOGGER.error(null, ex);
+            }
+        }
+    }
+
+    public SatisApiGroup getGroup()
+    {
+        return group;
+    }
+
+    public State getState()
+    {
+        return state;
+    }
+    
+    /**
+     * The share of failed calls in the current window.
+     * @return the failure rate, between 0 and 1
+     */
+    public synchronized double getFailureRate()
+    {
+        return (calls > 0) ? (double) failures / calls : 0.0;
+    }
+    
+    /**
+     * The share of slow calls in the current window.
+     * @return the slow call rate, between 0 and 1
+     */
+    public synchronized double getSlowCallRate()
+    {
+        return (calls > 0) ? (double) slowCalls / calls : 0.0;
+    }
+}
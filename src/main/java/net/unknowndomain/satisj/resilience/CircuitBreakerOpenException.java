@@ -0,0 +1,41 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import net.unknowndomain.satisj.common.SatisApiException;
+import net.unknowndomain.satisj.common.SatisApiGroup;
+
+/**
+ * Thrown in place of sending a call while the circuit breaker of its 
+ * group is open.
+ *
+ * @author journeyman
+ */
+public class CircuitBreakerOpenException extends SatisApiException
+{
+    private final SatisApiGroup group;
+
+    public CircuitBreakerOpenException(SatisApiGroup group)
+    {
+        super("Circuit breaker open for the " + group + " endpoints", null);
+        this.group = group;
+    }
+
+    public SatisApiGroup getGroup()
+    {
+        return group;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.time.Duration;
+
+/**
+ * The thresholds of the circuit breakers of a client, one for each group 
+ * of endpoints.
+ * 
+ * A breaker records the outcome of the last windowSize calls of its group: 
+ * when at least minimumCalls have been recorded and the failures or the 
+ * slow calls reach their threshold, it opens and fails the calls at once, 
+ * without sending them. After openDuration it lets halfOpenCalls probes 
+ * through: if they pass the thresholds the breaker closes again, 
+ * otherwise it opens for another openDuration.
+ * 
+ * I/O errors and 5xx responses are failures; any other response, 
+ * errors included, tells that the server is up and counts as a success.
+ *
+ * @author journeyman
+ */
+public class CircuitBreakerPolicy
+{
+    private int windowSize = 50;
+    private int minimumCalls = 20;
+    private double failureRateThreshold = 0.5;
+    private double slowCallRateThreshold = 1.0;
+    private Duration slowCallDuration = Duration.ofSeconds(10);
+    private Duration openDuration = Duration.ofSeconds(30);
+    private int halfOpenCalls = 5;
+    private CircuitBreakerListener listener;
+
+    /**
+     * Sets how many of the last calls are recorded.
+     * @param windowSize the size of the sliding window
+     * @return this policy
+     */
+    public CircuitBreakerPolicy windowSize(int windowSize)
+    {
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    /**
+     * Sets how many calls must be recorded before the rates are evaluated.
+     * @param minimumCalls the minimum number of calls in the window
+     * @return this policy
+     */
+    public CircuitBreakerPolicy minimumCalls(int minimumCalls)
+    {
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    /**
+     * Sets the share of failed calls which opens the breaker.
+     * @param failureRateThreshold the failure rate, between 0 and 1
+     * @return this policy
+     */
+    public CircuitBreakerPolicy failureRateThreshold(double failureRateThreshold)
+    {
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the share of slow calls which opens the breaker.
+     * Defaults to 1, so that only a server slow on every call opens it.
+     * @param slowCallRateThreshold the slow call rate, between 0 and 1
+     * @return this policy
+     */
+    public CircuitBreakerPolicy slowCallRateThreshold(double slowCallRateThreshold)
+    {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        return this;
+    }
+
+    /**
+     * Sets after how long a call is counted as slow, whatever its outcome.
+     * @param slowCallDuration the slow call duration
+     * @return this policy
+     */
+    public CircuitBreakerPolicy slowCallDuration(Duration slowCallDuration)
+    {
+        this.slowCallDuration = slowCallDuration;
+        return this;
+    }
+
+    /**
+     * Sets how long an open breaker fails the calls before probing again.
+     * @param openDuration the time spent in the open state
+     * @return this policy
+     */
+    public CircuitBreakerPolicy openDuration(Duration openDuration)
+    {
+        this.openDuration = openDuration;
+        return this;
+    }
+
+    /**
+     * Sets how many probe calls are let through in the half-open state.
+     * @param halfOpenCalls the number of probes
+     * @return this policy
+     */
+    public CircuitBreakerPolicy halfOpenCalls(int halfOpenCalls)
+    {
+        this.halfOpenCalls = halfOpenCalls;
+        return this;
+    }
+
+    /**
+     * Sets the listener told of the state changes of the breakers.
+     * @param listener the state listener
+     * @return this policy
+     */
+    public CircuitBreakerPolicy listener(CircuitBreakerListener listener)
+    {
+        this.listener = listener;
+        return this;
+    }
+
+    public int getWindowSize()
+    {
+        return windowSize;
+    }
+
+    public int getMinimumCalls()
+    {
+        return minimumCalls;
+    }
+
+    public double getFailureRateThreshold()
+    {
+        return failureRateThreshold;
+    }
+
+    public double getSlowCallRateThreshold()
+    {
+        return slowCallRateThreshold;
+    }
+
+    public Duration getSlowCallDuration()
+    {
+        return slowCallDuration;
+    }
+
+    public Duration getOpenDuration()
+    {
+        return openDuration;
+    }
+
+    public int getHalfOpenCalls()
+    {
+        return halfOpenCalls;
+    }
+
+    public CircuitBreakerListener getListener()
+    {
+        return listener;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import net.unknowndomain.satisj.common.SatisPriority;
+
+/**
+ * Limits the calls holding a slot to the limit of the implementation; the 
+ * calls over the limit wait in a queue ordered by {@link SatisPriority}, 
+ * with aging, and then by arrival.
+ * 
+ * Each call acquires a slot and, once completed, releases it.
+ *
+ * @author journeyman
+ */
+public abstract class ConcurrencyLimiter
+{
+    private final PriorityQueue<Waiter> waiting = new PriorityQueue<>(ConcurrencyLimiter::compare);
+    private final int maxQueue;
+    private final long agingNanos;
+    private int inFlight;
+    private long rejected;
+    private long sequence;
+
+    /**
+     * Create a limiter.
+     * @param maxQueue the most calls waiting
+     * @param priorityAging the aging time for each priority level
+     */
+    protected ConcurrencyLimiter(int maxQueue, Duration priorityAging)
+    {
+        this.maxQueue = maxQueue;
+        this.agingNanos = priorityAging.toNanos();
+    }
+    
+    /**
+     * Acquires a slot without blocking.
+     * @param priority the priority of the call in the queue
+     * @param onAcquired the task to run with the slot: it runs at once on 
+     * the calling thread when a slot is free, otherwise on the executor 
+     * once a slot is released
+     * @param executor the executor of the tasks which had to wait
+     * @return false if the queue is full and the task was rejected
+     */
+    public boolean acquire(SatisPriority priority, Runnable onAcquired, Executor executor)
+    {
+        Waiter waiter = new Waiter(priority, onAcquired, executor);
+        if (!enqueue(waiter))
+        {
+            return false;
+        }
+        if (waiter.acquired)
+        {
+            onAcquired.run();
+        }
+        return true;
+    }
+    
+    /**
+     * Acquires a slot, waiting for it.
+     * @param priority the priority of the call in the queue
+     * @param timeoutNanos the longest wait
+     * @return false if the queue is full or the wait timed out
+     * @throws InterruptedException 
+     */
+    public boolean acquire(SatisPriority priority, long timeoutNanos) throws InterruptedException
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        Waiter waiter = new Waiter(priority, latch::countDown, Runnable::run);
+        if (!enqueue(waiter))
+        {
+            return false;
+        }
+        try
+        {
+            if (waiter.acquired || latch.await(timeoutNanos, TimeUnit.NANOSECONDS))
+            {
+                return true;
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            if (!dequeue(waiter))
+            {
+                release();
+            }
+            throw ex;
+        }
+        // the slot may have been granted right after the timeout
+        if (dequeue(waiter))
+        {
+            synchronized (this)
+            {
+                rejected++;
+            }
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Take a free slot, or else queue the waiter.
+     * @return false if the queue is full
+     */
+    private synchronized boolean enqueue(Waiter waiter)
+    {
+        if ((inFlight < getLimit()) && waiting.isEmpty())
+        {
+            inFlight++;
+            waiter.acquired = true;
+            return true;
+        }
+        if (waiting.size() >= maxQueue)
+        {
+            rejected++;
+            return false;
+        }
+        waiter.rank = waiter.priority.rank(System.nanoTime(), agingNanos);
+        waiter.sequence = sequence++;
+        waiting.add(waiter);
+        return true;
+    }
+    
+    private synchronized boolean dequeue(Waiter waiter)
+    {
+        return waiting.remove(waiter);
+    }
+    
+    /**
+     * Releases a slot, handing it to the first waiting call.
+     */
+    public void release()
+    {
+        List<Waiter> ready;
+        synchronized (this)
+        {
+            inFlight--;
+            ready = drain();
+        }
+        ready.forEach(Waiter::run);
+    }
+    
+    private List<Waiter> drain()
+    {
+        List<Waiter> retVal = new ArrayList<>();
+        while ((inFlight < getLimit()) && !waiting.isEmpty())
+        {
+            Waiter waiter = waiting.poll();
+            waiter.acquired = true;
+            inFlight++;
+            retVal.add(waiter);
+        }
+        return retVal;
+    }
+    
+    /**
+     * The current limit of the slots.
+     * @return the limit
+     */
+    public abstract int getLimit();
+    
+    /**
+     * The calls currently holding a slot.
+     * @return the number of slots in use
+     */
+    public synchronized int getInFlight()
+    {
+        return inFlight;
+    }
+    
+    /**
+     * The calls waiting for a slot.
+     * @return the length of the queue
+     */
+    public synchronized int getQueueLength()
+    {
+        return waiting.size();
+    }
+    
+    /**
+     * The calls of a priority waiting for a slot.
+     * @param priority the priority
+     * @return the number of calls
+     */
+    public synchronized int getQueueLength(SatisPriority priority)
+    {
+        int retVal = 0;
+        for (Waiter waiter : waiting)
+        {
+            if (waiter.priority == priority)
+            {
+                retVal++;
+            }
+        }
+        return retVal;
+    }
+    
+    /**
+     * The calls rejected because the queue was full or their wait timed 
+     * out.
+     * @return the number of rejected calls
+     */
+    public synchronized long getRejected()
+    {
+        return rejected;
+    }
+    
+    private static int compare(Waiter a, Waiter b)
+    {
+        int retVal = Long.signum(a.rank - b.rank);
+        return (retVal != 0) ? retVal : Long.compare(a.sequence, b.sequence);
+    }
+    
+    private static class Waiter
+    {
+        private final SatisPriority priority;
+        private final Runnable task;
+        private final Executor executor;
+        private long rank;
+        private long sequence;
+        private volatile boolean acquired;
+
+        private Waiter(SatisPriority priority, Runnable task, Executor executor)
+        {
+            this.priority = priority;
+            this.task = task;
+            this.executor = executor;
+        }
+        
+        private void run()
+        {
+            executor.execute(task);
+        }
+    }
+}
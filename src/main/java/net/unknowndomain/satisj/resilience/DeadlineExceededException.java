@@ -0,0 +1,41 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.time.Instant;
+import net.unknowndomain.satisj.common.SatisApiException;
+
+/**
+ * Thrown in place of sending a call which cannot be sent before its 
+ * deadline: it is neither signed nor sent.
+ *
+ * @author journeyman
+ */
+public class DeadlineExceededException extends SatisApiException
+{
+    private final Instant deadline;
+
+    public DeadlineExceededException(String call, Instant deadline)
+    {
+        super(call + " cannot be sent before its deadline " + deadline, null);
+        this.deadline = deadline;
+    }
+
+    public Instant getDeadline()
+    {
+        return deadline;
+    }
+}
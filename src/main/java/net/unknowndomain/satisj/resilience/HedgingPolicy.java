@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.time.Duration;
+
+/**
+ * Hedging of the read-only calls (the GETs, such as PaymentDetails, 
+ * GetAuthorization and RetrieveConsumer): when an attempt has not 
+ * returned after the given percentile of the latencies of its group, a 
+ * second signed request is sent; the first response wins and the other 
+ * request is cancelled.
+ * 
+ * Hedging trades a few more requests, about 1 - percentile of them, 
+ * for a shorter tail latency.
+ *
+ * @author journeyman
+ */
+public class HedgingPolicy
+{
+    private double percentile = 0.95;
+    private Duration delay = Duration.ofMillis(50);
+    private int maxConcurrentHedges = 10;
+
+    /**
+     * Sets after which percentile of the recent latencies the second 
+     * request is sent. With 0 the second request is always sent after 
+     * the fixed delay.
+     * @param percentile the latency percentile, between 0 and 1
+     * @return this policy
+     */
+    public HedgingPolicy percentile(double percentile)
+    {
+        this.percentile = percentile;
+        return this;
+    }
+
+    /**
+     * Sets the shortest wait before the second request, which is also 
+     * the wait used until enough latencies have been recorded.
+     * @param delay the minimum hedging delay
+     * @return this policy
+     */
+    public HedgingPolicy delay(Duration delay)
+    {
+        this.delay = delay;
+        return this;
+    }
+
+    /**
+     * Sets how many second requests can be in flight at once; while they 
+     * all are, slow attempts are not hedged. This bounds the extra load when 
+     * the server is slow for every call, and the threads of the blocking 
+     * client sending them.
+     * @param maxConcurrentHedges the maximum number of second requests in flight
+     * @return this policy
+     */
+    public HedgingPolicy maxConcurrentHedges(int maxConcurrentHedges)
+    {
+        this.maxConcurrentHedges = maxConcurrentHedges;
+        return this;
+    }
+
+    public double getPercentile()
+    {
+        return percentile;
+    }
+
+    public Duration getDelay()
+    {
+        return delay;
+    }
+
+    public int getMaxConcurrentHedges()
+    {
+        return maxConcurrentHedges;
+    }
+}
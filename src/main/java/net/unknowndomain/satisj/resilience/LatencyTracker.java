@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the last calls and a percentile of them, 
+ * recomputed every few calls instead of on every read.
+ *
+ * @author journeyman
+ */
+public class LatencyTracker
+{
+    private static final int WINDOW = 256;
+    private static final int MIN_SAMPLES = 20;
+    private static final int UPDATE_EVERY = 16;
+    
+    private final double percentile;
+    private final long[] samples = new long[WINDOW];
+    private int pos;
+    private int count;
+    private int pending;
+    private volatile long value = -1;
+
+    /**
+     * Create a tracker.
+     * @param percentile the tracked percentile, between 0 and 1
+     */
+    public LatencyTracker(double percentile)
+    {
+        this.percentile = percentile;
+    }
+
+    /**
+     * Records the latency of a call.
+     * @param nanos the latency in nanoseconds
+     */
+    public synchronized void record(long nanos)
+    {
+        samples[pos] = nanos;
+        pos = (pos + 1) % WINDOW;
+        if (count < WINDOW)
+        {
+            count++;
+        }
+        pending++;
+        if ((count >= MIN_SAMPLES) && ((pending >= UPDATE_EVERY) || (value < 0)))
+        {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            value = sorted[Math.min(Math.max(index, 0), count - 1)];
+            pending = 0;
+        }
+    }
+
+    /**
+     * The tracked percentile of the recent latencies.
+     * @return the latency in nanoseconds, or -1 until enough calls are 
+     * recorded
+     */
+    public long getPercentile()
+    {
+        return value;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import net.unknowndomain.satisj.common.SatisApiGroup;
+
+/**
+ * Client-side rate limits, so that the throughput levels off at the 
+ * permitted rate instead of running into the throttling of the server.
+ * 
+ * Each limit is a token bucket applied to the calls of a group of 
+ * endpoints, optionally restricted to an HTTP method; a call is limited 
+ * by the bucket of its method or else by the one of its whole group. 
+ * Every attempt takes a permit: SatisAsyncClient delays the attempt 
+ * without blocking, SatisSimpleClient blocks the caller. In both cases 
+ * the call fails with a RateLimitExceededException when the wait would 
+ * be longer than the timeout.
+ *
+ * @author journeyman
+ */
+public class RateLimitPolicy
+{
+    /**
+     * The key of the limits of a whole group of endpoints.
+     */
+    public static final String ALL_METHODS = "*";
+    
+    private final Map<SatisApiGroup, Map<String, Limit>> limits = new EnumMap<>(SatisApiGroup.class);
+    private Duration timeout = Duration.ofSeconds(5);
+
+    /**
+     * Limits the calls of a group of endpoints.
+     * @param group the group of endpoints
+     * @param method the HTTP method of the limited calls, or null for all
+     * @param permitsPerSecond the steady rate of the calls
+     * @param burst the calls allowed at once after an idle period
+     * @return this policy
+     */
+    public RateLimitPolicy limit(SatisApiGroup group, String method, double permitsPerSecond, int burst)
+    {
+        String key = (method != null) ? method.toUpperCase(Locale.ROOT) : ALL_METHODS;
+        limits.computeIfAbsent(group, g -> new HashMap<>()).put(key, new Limit(permitsPerSecond, burst));
+        return this;
+    }
+
+    /**
+     * Limits the payment creations, refunds included.
+     * @param permitsPerSecond the steady rate, also used as burst
+     * @return this policy
+     */
+    public RateLimitPolicy paymentCreation(double permitsPerSecond)
+    {
+        return limit(SatisApiGroup.PAYMENT, "POST", permitsPerSecond, burst(permitsPerSecond));
+    }
+
+    /**
+     * Limits the payment details reads.
+     * @param permitsPerSecond the steady rate, also used as burst
+     * @return this policy
+     */
+    public RateLimitPolicy paymentReads(double permitsPerSecond)
+    {
+        return limit(SatisApiGroup.PAYMENT, "GET", permitsPerSecond, burst(permitsPerSecond));
+    }
+
+    /**
+     * Limits all the pre-authorization calls.
+     * @param permitsPerSecond the steady rate, also used as burst
+     * @return this policy
+     */
+    public RateLimitPolicy authorizations(double permitsPerSecond)
+    {
+        return limit(SatisApiGroup.AUTHORIZATION, null, permitsPerSecond, burst(permitsPerSecond));
+    }
+
+    /**
+     * Limits the consumer lookups.
+     * @param permitsPerSecond the steady rate, also used as burst
+     * @return this policy
+     */
+    public RateLimitPolicy consumerLookups(double permitsPerSecond)
+    {
+        return limit(SatisApiGroup.CONSUMER, null, permitsPerSecond, burst(permitsPerSecond));
+    }
+
+    /**
+     * Sets the longest time a call waits for its permit.
+     * @param timeout the acquire timeout, zero to fail at once
+     * @return this policy
+     */
+    public RateLimitPolicy timeout(Duration timeout)
+    {
+        this.timeout = timeout;
+        return this;
+    }
+    
+    /**
+     * Creates the buckets of a client, one for each limit.
+     * @return the buckets, by group and method
+     */
+    public Map<SatisApiGroup, Map<String, TokenBucket>> createBuckets()
+    {
+        Map<SatisApiGroup, Map<String, TokenBucket>> retVal = new EnumMap<>(SatisApiGroup.class);
+        for (Map.Entry<SatisApiGroup, Map<String, Limit>> group : limits.entrySet())
+        {
+            Map<String, TokenBucket> buckets = new HashMap<>();
+            for (Map.Entry<String, Limit> limit : group.getValue().entrySet())
+            {
+                buckets.put(limit.getKey(), new TokenBucket(limit.getValue().permitsPerSecond, limit.getValue().burst));
+            }
+            retVal.put(group.getKey(), buckets);
+        }
+        return retVal;
+    }
+
+    public Duration getTimeout()
+    {
+        return timeout;
+    }
+    
+    private static int burst(double permitsPerSecond)
+    {
+        return Math.max(1, (int) permitsPerSecond);
+    }
+    
+    private static class Limit
+    {
+        private final double permitsPerSecond;
+        private final int burst;
+
+        private Limit(double permitsPerSecond, int burst)
+        {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+    }
+}
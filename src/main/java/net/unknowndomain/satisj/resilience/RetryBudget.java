@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.util.Arrays;
+
+/**
+ * Limits the retries to a fraction of the calls made in the last ten 
+ * seconds, so that during an outage the retries cannot multiply the load 
+ * on the server. A minimum number of retries per second is always 
+ * allowed, for clients making few calls.
+ *
+ * @author journeyman
+ */
+public class RetryBudget
+{
+    private static final int WINDOW = 10;
+    private final double ratio;
+    private final int minRetriesPerSecond;
+    private final long[] seconds = new long[WINDOW];
+    private final long[] calls = new long[WINDOW];
+    private final long[] retries = new long[WINDOW];
+
+    /**
+     * Create a budget.
+     * @param ratio the retries allowed for each call, such as 0.1 for 10%
+     * @param minRetriesPerSecond the retries allowed regardless of the calls
+     */
+    public RetryBudget(double ratio, int minRetriesPerSecond)
+    {
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        Arrays.fill(seconds, Long.MIN_VALUE);
+    }
+
+    /**
+     * Records a new call, which adds to the budget.
+     */
+    public synchronized void onCall()
+    {
+        calls[slot(now())]++;
+    }
+
+    /**
+     * Withdraws a retry from the budget.
+     * @return true if the retry is allowed
+     */
+    public synchronized boolean tryRetry()
+    {
+        long now = now();
+        int slot = slot(now);
+        long totalCalls = 0;
+        long totalRetries = 0;
+        for (int i = 0; i < WINDOW; i++)
+        {
+            if ((seconds[i] != Long.MIN_VALUE) && (seconds[i] > now - WINDOW))
+            {
+                totalCalls += calls[i];
+                totalRetries += retries[i];
+            }
+        }
+        if (totalRetries < (long) minRetriesPerSecond * WINDOW + ratio * totalCalls)
+        {
+            retries[slot]++;
+            return true;
+        }
+        return false;
+    }
+
+    public double getRatio()
+    {
+        return ratio;
+    }
+
+    public int getMinRetriesPerSecond()
+    {
+        return minRetriesPerSecond;
+    }
+    
+    private int slot(long second)
+    {
+        int retVal = (int) Math.floorMod(second, (long) WINDOW);
+        if (seconds[retVal] != second)
+        {
+            seconds[retVal] = second;
+            calls[retVal] = 0;
+            retries[retVal] = 0;
+        }
+        return retVal;
+    }
+    
+    private static long now()
+    {
+        return System.nanoTime() / 1000000000L;
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import net.unknowndomain.satisj.common.SatisApiException;
+
+/**
+ * Decides if and when a failed call is sent again.
+ * 
+ * A call is retried after an I/O error or one of the retry statuses, up to 
+ * maxAttempts, waiting an exponential backoff with jitter, or the 
+ * Retry-After of the response when longer. Each attempt is signed again, 
+ * with a fresh Date and the same Idempotency-Key, so that the server 
+ * executes a retried POST only once.
+ * 
+ * Like SatisClientConfig, the policy is read when the client is created 
+ * and may be shared by several clients, together with its budget.
+ *
+ * @author journeyman
+ */
+public class RetryPolicy
+{
+    private int maxAttempts = 3;
+    private Duration initialBackoff = Duration.ofMillis(100);
+    private Duration maxBackoff = Duration.ofSeconds(2);
+    private double multiplier = 2.0;
+    private double jitter = 1.0;
+    private boolean honorRetryAfter = true;
+    private Duration maxRetryAfter = Duration.ofSeconds(30);
+    private final Set<Integer> retryStatuses = new HashSet<>();
+    private final Set<String> retryMethods = new HashSet<>();
+    private RetryBudget budget = new RetryBudget(0.1, 10);
+
+    public RetryPolicy()
+    {
+        retryStatuses.add(429);
+        retryStatuses.add(502);
+        retryStatuses.add(503);
+        retryStatuses.add(504);
+        retryMethods.add("GET");
+        retryMethods.add("PUT");
+        retryMethods.add("POST");
+    }
+
+    /**
+     * Sets how many times a call is sent at most, the first included.
+     * @param maxAttempts the maximum number of attempts
+     * @return this policy
+     */
+    public RetryPolicy maxAttempts(int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Sets the wait before the first retry.
+     * @param initialBackoff the first backoff
+     * @return this policy
+     */
+    public RetryPolicy initialBackoff(Duration initialBackoff)
+    {
+        this.initialBackoff = initialBackoff;
+        return this;
+    }
+
+    /**
+     * Sets the longest wait between two attempts, Retry-After excluded.
+     * @param maxBackoff the backoff cap
+     * @return this policy
+     */
+    public RetryPolicy maxBackoff(Duration maxBackoff)
+    {
+        this.maxBackoff = maxBackoff;
+        return this;
+    }
+
+    /**
+     * Sets how much the backoff grows at each retry.
+     * @param multiplier the backoff multiplier
+     * @return this policy
+     */
+    public RetryPolicy multiplier(double multiplier)
+    {
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * Sets the random part of the backoff: 0 waits exactly the backoff, 
+     * 1 (the default) waits a random time between zero and the backoff, 
+     * so that the clients failed together do not retry together.
+     * @param jitter the random fraction of the backoff, between 0 and 1
+     * @return this policy
+     */
+    public RetryPolicy jitter(double jitter)
+    {
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Waits the Retry-After of a 429 or 503 response when it is longer than 
+     * the backoff.
+     * @param honorRetryAfter false to ignore Retry-After
+     * @return this policy
+     */
+    public RetryPolicy honorRetryAfter(boolean honorRetryAfter)
+    {
+        this.honorRetryAfter = honorRetryAfter;
+        return this;
+    }
+
+    /**
+     * Sets the longest Retry-After the client waits: when the server asks 
+     * for more, the call fails without retrying.
+     * @param maxRetryAfter the Retry-After cap
+     * @return this policy
+     */
+    public RetryPolicy maxRetryAfter(Duration maxRetryAfter)
+    {
+        this.maxRetryAfter = maxRetryAfter;
+        return this;
+    }
+
+    /**
+     * Sets whether the responses with a status are retried.
+     * Defaults to 429, 502, 503 and 504.
+     * @param status the HTTP status
+     * @param retry true to retry the responses with the status
+     * @return this policy
+     */
+    public RetryPolicy retryStatus(int status, boolean retry)
+    {
+        if (retry)
+        {
+            retryStatuses.add(status);
+        }
+        else
+        {
+            retryStatuses.remove(status);
+        }
+        return this;
+    }
+
+    /**
+     * Sets whether the calls with an HTTP method are retried.
+     * Defaults to GET, PUT and POST, which are all idempotent thanks to 
+     * the Idempotency-Key of the calls.
+     * @param method the HTTP method
+     * @param retry true to retry the calls with the method
+     * @return this policy
+     */
+    public RetryPolicy retryMethod(String method, boolean retry)
+    {
+        if (retry)
+        {
+            retryMethods.add(method.toUpperCase(Locale.ROOT));
+        }
+        else
+        {
+            retryMethods.remove(method.toUpperCase(Locale.ROOT));
+        }
+        return this;
+    }
+
+    /**
+     * Sets the budget shared by the retries of the calls using this policy.
+     * @param budget the retry budget, or null for no budget
+     * @return this policy
+     */
+    public RetryPolicy budget(RetryBudget budget)
+    {
+        this.budget = budget;
+        return this;
+    }
+    
+    /**
+     * Records a new call, before its first attempt.
+     */
+    public void onCall()
+    {
+        if (budget != null)
+        {
+            budget.onCall();
+        }
+    }
+    
+    /**
+     * Tells how long to wait before sending a failed call again.
+     * @param method the HTTP method of the call
+     * @param attempt the number of the failed attempt, starting from 1
+     * @param failure the failure of the attempt
+     * @return the wait in milliseconds, or -1 if the call must not be retried
+     */
+    public long retryDelay(String method, int attempt, Throwable failure)
+    {
+        if ((attempt >= maxAttempts) || !retryMethods.contains(method))
+        {
+            return -1;
+        }
+        Duration retryAfter = null;
+        if (failure instanceof SatisApiException)
+        {
+            SatisApiException ex = (SatisApiException) failure;
+            if (!retryStatuses.contains(ex.getStatus()))
+            {
+                return -1;
+            }
+            retryAfter = ex.getRetryAfter();
+        }
+        else if (!(failure instanceof IOException) || (failure instanceof JsonProcessingException))
+        {
+            return -1;
+        }
+        long retVal = backoff(attempt);
+        if (honorRetryAfter && (retryAfter != null))
+        {
+            if (retryAfter.compareTo(maxRetryAfter) > 0)
+            {
+                return -1;
+            }
+            retVal = Math.max(retVal, retryAfter.toMillis());
+        }
+        if ((budget != null) && !budget.tryRetry())
+        {
+            return -1;
+        }
+        return retVal;
+    }
+    
+    private long backoff(int attempt)
+    {
+        double backoff = Math.min(initialBackoff.toMillis() * Math.pow(multiplier, attempt - 1), maxBackoff.toMillis());
+        return (long) (backoff * (1.0 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    public Duration getInitialBackoff()
+    {
+        return initialBackoff;
+    }
+
+    public Duration getMaxBackoff()
+    {
+        return maxBackoff;
+    }
+
+    public double getMultiplier()
+    {
+        return multiplier;
+    }
+
+    public double getJitter()
+    {
+        return jitter;
+    }
+
+    public boolean isHonorRetryAfter()
+    {
+        return honorRetryAfter;
+    }
+
+    public Duration getMaxRetryAfter()
+    {
+        return maxRetryAfter;
+    }
+
+    public RetryBudget getBudget()
+    {
+        return budget;
+    }
+}
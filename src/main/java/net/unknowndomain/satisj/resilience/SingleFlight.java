@@ -0,0 +1,188 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces the identical requests in flight: the first caller of a key 
+ * starts the request, the callers arriving before it completes join it 
+ * and share its result.
+ * 
+ * Each caller gets its own future, so cancelling it does not affect the 
+ * others; the request itself is cancelled once every caller cancelled.
+ * Nothing is cached: a caller arriving after the completion starts a new 
+ * request.
+ *
+ * @author journeyman
+ */
+public class SingleFlight
+{
+    private final ConcurrentMap<String, Flight<?>> flights = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+    
+    /**
+     * Joins the request in flight for the key, or starts it.
+     * @param <T> the type of the result
+     * @param key the identity of the request
+     * @param request starts the request, on the calling thread
+     * @return the future of the result, owned by the caller
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> join(String key, Supplier<CompletableFuture<T>> request)
+    {
+        while (true)
+        {
+            Flight<T> flight = new Flight<>();
+            Flight<T> current = (Flight<T>) flights.putIfAbsent(key, flight);
+            if (current == null)
+            {
+                CompletableFuture<T> retVal = flight.follow();
+                CompletableFuture<T> upstream;
+                try
+                {
+                    upstream = request.get();
+                }
+                catch (RuntimeException ex)
+                {
+                    upstream = new CompletableFuture<>();
+                    upstream.completeExceptionally(ex);
+                }
+                flight.start(upstream);
+                upstream.whenComplete((result, failure) ->
+                {
+                    // unregister before completing, so that nobody joins a completed flight
+                    flights.remove(key, flight);
+                    if (failure != null)
+                    {
+                        flight.result.completeExceptionally(failure);
+                    }
+                    else
+                    {
+                        flight.result.complete(result);
+                    }
+                });
+                return retVal;
+            }
+            CompletableFuture<T> retVal = current.follow();
+            if (retVal != null)
+            {
+                coalesced.increment();
+                return retVal;
+            }
+            // every caller cancelled it, start a new one
+            flights.remove(key, current);
+        }
+    }
+    
+    /**
+     * The requests currently in flight.
+     * @return the number of distinct requests
+     */
+    public int getInFlight()
+    {
+        return flights.size();
+    }
+    
+    /**
+     * The calls served by joining a request in flight.
+     * @return the number of calls which did not send their own request
+     */
+    public long getCoalesced()
+    {
+        return coalesced.sum();
+    }
+    
+    private static class Flight<T>
+    {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private CompletableFuture<T> upstream;
+        private int callers;
+        private boolean cancelled;
+        
+        /**
+         * Adds a caller.
+         * @return the future of the caller, or null if the flight was 
+         * cancelled
+         */
+        private CompletableFuture<T> follow()
+        {
+            synchronized (this)
+            {
+                if (cancelled)
+                {
+                    return null;
+                }
+                callers++;
+            }
+            CompletableFuture<T> retVal = new CompletableFuture<>();
+            result.whenComplete((value, failure) ->
+            {
+                if (failure != null)
+                {
+                    retVal.completeExceptionally(failure);
+                }
+                else
+                {
+                    retVal.complete(value);
+                }
+            });
+            retVal.whenComplete((value, failure) ->
+            {
+                if (retVal.isCancelled())
+                {
+                    leave();
+                }
+            });
+            return retVal;
+        }
+        
+        private void leave()
+        {
+            CompletableFuture<T> toCancel;
+            synchronized (this)
+            {
+                if ((--callers > 0) || result.isDone())
+                {
+                    return;
+                }
+                cancelled = true;
+                toCancel = upstream;
+            }
+            if (toCancel != null)
+            {
+                toCancel.cancel(true);
+            }
+        }
+        
+        private void start(CompletableFuture<T> upstream)
+        {
+            synchronized (this)
+            {
+                this.upstream = upstream;
+                if (!cancelled)
+                {
+                    return;
+                }
+            }
+            upstream.cancel(true);
+        }
+    }
+}
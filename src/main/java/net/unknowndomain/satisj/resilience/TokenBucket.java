@@ -0,0 +1,101 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+/**
+ * A token bucket, refilled at a steady rate up to its burst size.
+ * 
+ * A permit is reserved even when the bucket is empty, as long as the wait 
+ * for it fits the given timeout: the reserved permits are paid by the 
+ * next refills, so the callers are served in order at the permitted rate.
+ *
+ * @author journeyman
+ */
+public class TokenBucket
+{
+    private final double permitsPerSecond;
+    private final int burst;
+    private double tokens;
+    private long last = System.nanoTime();
+
+    /**
+     * Create a full bucket.
+     * @param permitsPerSecond the refill rate
+     * @param burst the capacity of the bucket
+     */
+    public TokenBucket(double permitsPerSecond, int burst)
+    {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    /**
+     * Reserves a permit.
+     * @param maxWaitNanos the longest acceptable wait
+     * @return the wait in nanoseconds before using the permit, 0 if it can 
+     * be used at once, or -1 if the wait would be longer than maxWaitNanos 
+     * and nothing was reserved
+     */
+    public synchronized long reserve(long maxWaitNanos)
+    {
+        refill();
+        long retVal = (tokens >= 1.0) ? 0L : (long) Math.ceil((1.0 - tokens) * 1e9 / permitsPerSecond);
+        if (retVal > maxWaitNanos)
+        {
+            return -1;
+        }
+        tokens -= 1.0;
+        return retVal;
+    }
+    
+    /**
+     * Gives back a permit reserved by a call which was not sent after all.
+     */
+    public synchronized void refund()
+    {
+        refill();
+        tokens = Math.min(burst, tokens + 1.0);
+    }
+    
+    /**
+     * The permits which can be used at once; a negative value is the 
+     * number of permits reserved in advance, still waiting for a refill.
+     * @return the available permits
+     */
+    public synchronized double getAvailablePermits()
+    {
+        refill();
+        return tokens;
+    }
+    
+    private void refill()
+    {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - last) * permitsPerSecond / 1e9);
+        last = now;
+    }
+
+    public double getPermitsPerSecond()
+    {
+        return permitsPerSecond;
+    }
+
+    public int getBurst()
+    {
+        return burst;
+    }
+}
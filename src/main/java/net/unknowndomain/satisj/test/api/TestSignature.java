@@ -17,6 +17,7 @@ package net.unknowndomain.satisj.test.api;
 
 import net.unknowndomain.satisj.Environment;
 import net.unknowndomain.satisj.common.SatisApiCall;
+import net.unknowndomain.satisj.common.SatisApiGroup;
 import net.unknowndomain.satisj.common.SatisApi;
 import net.unknowndomain.satisj.test.TestResults;
 import org.slf4j.Logger;
@@ -36,13 +37,13 @@ public class TestSignature extends SatisApiCall<TestResults> {
     }
     
     @Override
-    public String getBody() {
-        return "";
+    public String getMethod() {
+        return "GET";
     }
 
     @Override
-    public String getMethod() {
-        return "GET";
+    public SatisApiGroup getGroup() {
+        return SatisApiGroup.TEST;
     }
 
     @Override
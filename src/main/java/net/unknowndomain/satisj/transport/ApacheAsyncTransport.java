@@ -0,0 +1,239 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.transport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import net.unknowndomain.satisj.async.SatisJsonConsumer;
+import net.unknowndomain.satisj.common.SatisClientConfig;
+import net.unknowndomain.satisj.common.SatisThreadFactory;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * Non-blocking transport based on the Apache HttpClient 5 async API.
+ * It uses a started IO reactor shared by all the exchanges and, when HTTP/2
+ * is enabled, negotiates it through ALPN on each connection, multiplexing 
+ * the exchanges over the connections which agreed on it; the others, and 
+ * the plain HTTP ones, stay on HTTP/1.1.
+ *
+ * @author journeyman
+ */
+public class ApacheAsyncTransport implements SatisTransport
+{
+    private static final ContentType JSON_UTF8 = ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8);
+    private final RequestConfig requestConfig;
+    private final CloseableHttpAsyncClient httpClient;
+    private final StreamLimiter h2Streams;
+    private volatile boolean h2Active;
+
+    public ApacheAsyncTransport(SatisClientConfig config)
+    {
+        this.requestConfig = RequestConfig.custom()
+                .setResponseTimeout(Timeout.ofMilliseconds(config.getResponseTimeout().toMillis()))
+                .setConnectionKeepAlive(TimeValue.ofMilliseconds(config.getKeepAlive().toMillis()))
+                .build();
+        PoolingAsyncClientConnectionManager connManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(config.getMaxConnections())
+                .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(config.getConnectTimeout().toMillis()))
+                        .build())
+                .setDefaultTlsConfig(TlsConfig.custom()
+                        // HTTP/1.1 on the connections where the server does not pick HTTP/2
+                        .setVersionPolicy(config.isHttp2() ? HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_1)
+                        .build())
+                .build();
+        HttpAsyncClientBuilder bld = HttpAsyncClients.custom()
+                .setConnectionManager(connManager)
+                .setH2Config(H2Config.custom()
+                        .setPushEnabled(false)
+                        .build())
+                .setIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(config.getIoThreads())
+                        .build())
+                .setThreadFactory(new SatisThreadFactory("satisj-io"))
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(config.getIdleConnectionTimeout().toMillis()));
+        if (config.getRetryPolicy() != null)
+        {
+            // the client retries the calls itself, re-signing each attempt
+            bld.disableAutomaticRetries();
+        }
+        httpClient = bld.build();
+        httpClient.start();
+        h2Streams = config.isHttp2() ? new StreamLimiter(config.getMaxConcurrentStreams()) : null;
+    }
+    
+    /**
+     * Tells if the requests are currently multiplexed over HTTP/2.
+     * @return true if the last response came over HTTP/2, false if HTTP/2 
+     * is disabled or the server did not negotiate it
+     */
+    public boolean isHttp2Active()
+    {
+        return h2Active;
+    }
+    
+    /**
+     * The number of exchanges currently in flight when HTTP/2 is enabled.
+     * @return the number of in-flight HTTP/2 requests
+     */
+    public int getActiveStreams()
+    {
+        return (h2Streams != null) ? h2Streams.getActive() : 0;
+    }
+    
+    /**
+     * The number of requests waiting for a free HTTP/2 stream.
+     * @return the number of requests over the max-concurrent-streams limit
+     */
+    public int getWaitingStreams()
+    {
+        return (h2Streams != null) ? h2Streams.getWaiting() : 0;
+    }
+
+    @Override
+    public <T> T execute(SatisRequest request, SatisResponseReader<T> reader) throws IOException
+    {
+        try
+        {
+            return executeAsync(request, reader).get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof IOException)
+            {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> executeAsync(SatisRequest request, SatisResponseReader<T> reader)
+    {
+        CompletableFuture<T> retVal = new CompletableFuture<>();
+        if (h2Streams != null)
+        {
+            h2Streams.submit(() -> send(request, reader, retVal));
+        }
+        else
+        {
+            send(request, reader, retVal);
+        }
+        return retVal;
+    }
+    
+    private <T> void send(SatisRequest request, SatisResponseReader<T> reader, CompletableFuture<T> retVal)
+    {
+        if (retVal.isDone())
+        {
+            release();
+            return;
+        }
+        AsyncRequestBuilder bld = AsyncRequestBuilder.create(request.getMethod());
+        bld.setUri(request.getUri());
+        for (int i = 0; i < request.getHeaderCount(); i++)
+        {
+            bld.addHeader(request.getHeaderName(i), request.getHeaderValue(i));
+        }
+        bld.setEntity(request.getBody(), JSON_UTF8);
+        SatisJsonConsumer<T> cons = new SatisJsonConsumer<>(reader);
+        HttpClientContext context = HttpClientContext.create();
+        if (request.getResponseTimeout() != null)
+        {
+            context.setRequestConfig(RequestConfig.copy(requestConfig)
+                    .setResponseTimeout(Timeout.ofMilliseconds(request.getResponseTimeout().toMillis()))
+                    .build());
+        }
+        Future<T> exchange = httpClient.execute(bld.build(), cons, null, context, new FutureCallback<T>()
+        {
+            @Override
+            public void completed(T result)
+            {
+                release();
+                h2Active = HttpVersion.HTTP_2.equals(cons.getVersion());
+                retVal.complete(result);
+            }
+
+            @Override
+            public void failed(Exception ex)
+            {
+                release();
+                retVal.completeExceptionally(ex);
+            }
+
+            @Override
+            public void cancelled()
+            {
+                release();
+                retVal.cancel(false);
+            }
+        });
+        retVal.whenComplete((result, ex) -> 
+        {
+            if (retVal.isCancelled())
+            {
+                exchange.cancel(true);
+            }
+        });
+    }
+    
+    private void release()
+    {
+        if (h2Streams != null)
+        {
+            h2Streams.release();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        httpClient.close(CloseMode.GRACEFUL);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import net.unknowndomain.satisj.common.SatisApiException;
+import net.unknowndomain.satisj.common.SatisClientConfig;
+import net.unknowndomain.satisj.common.SatisDates;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * Blocking transport based on the Apache HttpClient 5 classic API, 
+ * backed by a pool of long-lived connections.
+ *
+ * @author journeyman
+ */
+public class ApacheClassicTransport implements SatisTransport
+{
+    private static final ContentType JSON_UTF8 = ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8);
+    private final CloseableHttpClient httpClient;
+    private final RequestConfig requestConfig;
+
+    public ApacheClassicTransport(SatisClientConfig config)
+    {
+        PoolingHttpClientConnectionManager connManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(config.getMaxConnections())
+                .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(config.getConnectTimeout().toMillis()))
+                        .build())
+                .build();
+        requestConfig = RequestConfig.custom()
+                .setResponseTimeout(Timeout.ofMilliseconds(config.getResponseTimeout().toMillis()))
+                .setConnectionKeepAlive(TimeValue.ofMilliseconds(config.getKeepAlive().toMillis()))
+                .build();
+        HttpClientBuilder bld = HttpClients.custom()
+                .setConnectionManager(connManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(config.getIdleConnectionTimeout().toMillis()));
+        if (config.getRetryPolicy() != null)
+        {
+            // the client retries the calls itself, re-signing each attempt
+            bld.disableAutomaticRetries();
+        }
+        httpClient = bld.build();
+    }
+
+    @Override
+    public <T> T execute(SatisRequest request, SatisResponseReader<T> reader) throws IOException
+    {
+        HttpUriRequestBase httpRequest = new HttpUriRequestBase(request.getMethod(), URI.create(request.getUri()));
+        for (int i = 0; i < request.getHeaderCount(); i++)
+        {
+            httpRequest.addHeader(request.getHeaderName(i), request.getHeaderValue(i));
+        }
+        httpRequest.setEntity(new ByteArrayEntity(request.getBody(), JSON_UTF8));
+        // cancelling shuts the connection down, which unblocks a pending read
+        request.onAbort(httpRequest::cancel);
+        HttpClientContext context = HttpClientContext.create();
+        if (request.getResponseTimeout() != null)
+        {
+            context.setRequestConfig(RequestConfig.copy(requestConfig)
+                    .setResponseTimeout(Timeout.ofMilliseconds(request.getResponseTimeout().toMillis()))
+                    .build());
+        }
+        return httpClient.execute(httpRequest, context, resp ->
+        {
+            try
+            {
+                if (resp.getEntity() == null)
+                {
+                    return reader.read(resp.getCode(), null, new ByteArrayInputStream(new byte[0]));
+                }
+                try (final InputStream bodyStream = resp.getEntity().getContent())
+                {
+                    return reader.read(resp.getCode(), resp.getEntity().getContentType(), bodyStream);
+                }
+            }
+            catch (SatisApiException ex)
+            {
+                Header retryAfter = resp.getFirstHeader("Retry-After");
+                if (retryAfter != null)
+                {
+                    ex.setRetryAfter(SatisDates.parseRetryAfter(retryAfter.getValue()));
+                }
+                throw ex;
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<T> executeAsync(SatisRequest request, SatisResponseReader<T> reader)
+    {
+        CompletableFuture<T> retVal = new CompletableFuture<>();
+        try
+        {
+            retVal.complete(execute(request, reader));
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            retVal.completeExceptionally(ex);
+        }
+        return retVal;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        httpClient.close(CloseMode.GRACEFUL);
+    }
+}
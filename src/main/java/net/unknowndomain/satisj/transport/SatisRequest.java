@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.transport;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A signed request, ready to be sent by a {@link SatisTransport}.
+ * 
+ * The client can abort the exchange of a request, such as the losing 
+ * attempt of a hedged call: the transport sending it registers how with 
+ * {@link #onAbort(Runnable)}.
+ *
+ * @author journeyman
+ */
+public class SatisRequest
+{
+    private static final Runnable ABORTED = () -> {};
+    
+    private final String method;
+    private final String uri;
+    private final String[] headers;
+    private final byte[] body;
+    private final Duration responseTimeout;
+    private final AtomicReference<Runnable> abortAction = new AtomicReference<>();
+
+    /**
+     * @param method the HTTP method
+     * @param uri the absolute request URI
+     * @param headers the headers, as name/value pairs
+     * @param body the body bytes
+     */
+    public SatisRequest(String method, String uri, String[] headers, byte[] body)
+    {
+        this(method, uri, headers, body, null);
+    }
+
+    /**
+     * @param method the HTTP method
+     * @param uri the absolute request URI
+     * @param headers the headers, as name/value pairs
+     * @param body the body bytes
+     * @param responseTimeout the response timeout of this request, or null 
+     * for the one of the transport
+     */
+    public SatisRequest(String method, String uri, String[] headers, byte[] body, Duration responseTimeout)
+    {
+        this.method = method;
+        this.uri = uri;
+        this.headers = headers;
+        this.body = body;
+        this.responseTimeout = responseTimeout;
+    }
+
+    public String getMethod()
+    {
+        return method;
+    }
+
+    public String getUri()
+    {
+        return uri;
+    }
+
+    public int getHeaderCount()
+    {
+        return headers.length / 2;
+    }
+
+    public String getHeaderName(int index)
+    {
+        return headers[index * 2];
+    }
+
+    public String getHeaderValue(int index)
+    {
+        return headers[index * 2 + 1];
+    }
+
+    /**
+     * The UTF-8 encoded JSON body; empty for calls without a body.
+     * @return the body bytes
+     */
+    public byte[] getBody()
+    {
+        return body;
+    }
+
+    /**
+     * Abort the exchange of this request: a transport blocked sending it, or 
+     * waiting for its response, fails with an IOException and releases the 
+     * connection. A request aborted before it is sent fails at once.
+     */
+    public void abort()
+    {
+        Runnable action = abortAction.getAndSet(ABORTED);
+        if ((action != null) && (action != ABORTED))
+        {
+            action.run();
+        }
+    }
+
+    public boolean isAborted()
+    {
+        return abortAction.get() == ABORTED;
+    }
+
+    /**
+     * Set how the transport aborts the exchange of this request, replacing 
+     * the previous action; when the request is already aborted the action 
+     * runs at once.
+     * @param action the abort action, such as closing the connection
+     */
+    public void onAbort(Runnable action)
+    {
+        Runnable current = abortAction.get();
+        while (current != ABORTED)
+        {
+            if (abortAction.compareAndSet(current, action))
+            {
+                return;
+            }
+            current = abortAction.get();
+        }
+        action.run();
+    }
+
+    /**
+     * The response timeout of this request, such as the time left before 
+     * the deadline of its call.
+     * @return the timeout, or null for the one of the transport
+     */
+    public Duration getResponseTimeout()
+    {
+        return responseTimeout;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.transport;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Decodes the response of a {@link SatisRequest}.
+ * Readers are provided by the client, so that every transport shares the 
+ * same decoding and error handling.
+ * 
+ * Transports reading the body as a stream use the InputStream variant, 
+ * while non-blocking transports feed the body to the non-blocking parser 
+ * of the JsonFactory as it arrives and decode the parsed tokens.
+ *
+ * @author journeyman
+ * @param <T>
+ */
+public interface SatisResponseReader<T>
+{
+    /**
+     * The maximum number of bytes read from a body which is not JSON.
+     */
+    int RAW_BODY_LIMIT = 4096;
+    
+    /**
+     * Decode a response.
+     * @param status the HTTP status code
+     * @param contentType the response Content-Type, or null if missing
+     * @param body the response body
+     * @return the decoded result
+     * @throws IOException if the body cannot be read or parsed
+     */
+    default T read(int status, String contentType, InputStream body) throws IOException
+    {
+        if (!isJson(contentType))
+        {
+            byte[] raw = new byte[RAW_BODY_LIMIT];
+            int len = 0;
+            int n;
+            while ((len < raw.length) && ((n = body.read(raw, len, raw.length - len)) != -1))
+            {
+                len += n;
+            }
+            return readRaw(status, contentType, Arrays.copyOf(raw, len));
+        }
+        try (JsonParser parser = getJsonFactory().createParser(body))
+        {
+            return read(status, contentType, parser);
+        }
+    }
+    
+    /**
+     * Decode a response already available as JSON tokens.
+     * @param status the HTTP status code
+     * @param contentType the response Content-Type, or null if missing
+     * @param body the parser over the response body
+     * @return the decoded result
+     * @throws IOException if the body cannot be parsed
+     */
+    T read(int status, String contentType, JsonParser body) throws IOException;
+    
+    /**
+     * Decode a response whose body is not JSON, such as the error page of 
+     * a proxy; only the first {@link #RAW_BODY_LIMIT} bytes are read.
+     * @param status the HTTP status code
+     * @param contentType the response Content-Type
+     * @param body the beginning of the response body
+     * @return the decoded result
+     * @throws IOException if the response cannot be decoded
+     */
+    T readRaw(int status, String contentType, byte[] body) throws IOException;
+    
+    /**
+     * Tells if a body is parsed as JSON, given its Content-Type.
+     * A missing Content-Type is assumed to be JSON.
+     * @param contentType the response Content-Type, or null if missing
+     * @return true if the body has to be parsed
+     */
+    default boolean isJson(String contentType)
+    {
+        return (contentType == null) || contentType.toLowerCase(Locale.ROOT).contains("json");
+    }
+    
+    /**
+     * The factory of the parsers used for the response body.
+     * @return the JsonFactory
+     */
+    JsonFactory getJsonFactory();
+}
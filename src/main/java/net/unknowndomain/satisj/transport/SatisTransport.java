@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The HTTP layer below SatisApi.
+ * A transport only moves already signed requests on the wire: signing, 
+ * serialization and decoding are done by the client, which makes the 
+ * transports interchangeable.
+ *
+ * @author journeyman
+ */
+public interface SatisTransport extends Closeable
+{
+    /**
+     * Send the request and wait for its response.
+     * @param <T> the result type
+     * @param request the signed request
+     * @param reader the decoder of the response
+     * @return the decoded response
+     * @throws IOException in case of a network or decoding error
+     */
+    <T> T execute(SatisRequest request, SatisResponseReader<T> reader) throws IOException;
+    
+    /**
+     * Send the request without waiting for its response.
+     * Blocking transports may run the exchange in the calling thread and 
+     * return an already completed future.
+     * @param <T> the result type
+     * @param request the signed request
+     * @param reader the decoder of the response
+     * @return a future completed with the decoded response
+     */
+    <T> CompletableFuture<T> executeAsync(SatisRequest request, SatisResponseReader<T> reader);
+}
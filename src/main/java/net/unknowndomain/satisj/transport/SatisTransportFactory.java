@@ -0,0 +1,72 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.transport;
+
+import java.lang.reflect.InvocationTargetException;
+import net.unknowndomain.satisj.common.SatisClientConfig;
+
+/**
+ * Creates the transport of a client from its configuration.
+ * The client owns the created transport and closes it when closed.
+ *
+ * @author journeyman
+ */
+@FunctionalInterface
+public interface SatisTransportFactory
+{
+    SatisTransport create(SatisClientConfig config);
+    
+    /**
+     * The factory of the transport based on java.net.http.HttpClient.
+     * The transport is compiled for Java 11 in the multi-release section 
+     * of the jar, so it is loaded by name when the client is created.
+     * @return the factory
+     * @throws IllegalStateException when the client is created on Java 8, 
+     * or from a repackaged jar which lost its Multi-Release attribute
+     */
+    static SatisTransportFactory jdk()
+    {
+        return config ->
+        {
+            String version = System.getProperty("java.specification.version", "1.8");
+            if (version.startsWith("1."))
+            {
+                throw new IllegalStateException("The JDK transport requires Java 11 or later, running on " + version);
+            }
+            try
+            {
+                Class<?> clazz = Class.forName("net.unknowndomain.satisj.transport.JdkHttpTransport");
+                return (SatisTransport) clazz.getConstructor(SatisClientConfig.class).newInstance(config);
+            }
+            catch (ClassNotFoundException ex)
+            {
+                throw new IllegalStateException("The JDK transport is missing: the jar must keep its Multi-Release manifest attribute", ex);
+            }
+            catch (InvocationTargetException ex)
+            {
+                if (ex.getCause() instanceof RuntimeException)
+                {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw new IllegalStateException(ex.getCause());
+            }
+            catch (ReflectiveOperationException ex)
+            {
+                throw new IllegalStateException(ex);
+            }
+        };
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.transport;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Caps the number of exchanges in flight without blocking the caller:
+ * exchanges over the limit are parked and started when a slot is released, 
+ * in arrival order.
+ *
+ * @author journeyman
+ */
+class StreamLimiter
+{
+    private final int limit;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int active;
+
+    StreamLimiter(int limit)
+    {
+        this.limit = limit;
+    }
+
+    void submit(Runnable exchange)
+    {
+        synchronized (this)
+        {
+            if (active >= limit)
+            {
+                waiting.add(exchange);
+                return;
+            }
+            active++;
+        }
+        exchange.run();
+    }
+
+    void release()
+    {
+        Runnable next;
+        synchronized (this)
+        {
+            next = waiting.poll();
+            if (next == null)
+            {
+                active--;
+                return;
+            }
+        }
+        next.run();
+    }
+
+    synchronized int getActive()
+    {
+        return active;
+    }
+
+    synchronized int getWaiting()
+    {
+        return waiting.size();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import net.unknowndomain.satisj.common.SatisApiException;
+import net.unknowndomain.satisj.common.SatisClientConfig;
+import net.unknowndomain.satisj.common.SatisDates;
+
+/**
+ * Transport based on java.net.http.HttpClient, which lets the library run
+ * without the Apache HttpClient stack on Java 11 or later.
+ * With HTTP/2 enabled the requests are multiplexed over a single connection
+ * and the JDK falls back to HTTP/1.1 when the server does not negotiate it.
+ *
+ * @author journeyman
+ */
+public class JdkHttpTransport implements SatisTransport
+{
+    private static final String JSON_UTF8 = "application/json; charset=UTF-8";
+    private final HttpClient httpClient;
+    private final Duration responseTimeout;
+
+    public JdkHttpTransport(SatisClientConfig config)
+    {
+        httpClient = HttpClient.newBuilder()
+                .version(config.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(config.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        responseTimeout = config.getResponseTimeout();
+    }
+
+    private HttpRequest buildRequest(SatisRequest request)
+    {
+        HttpRequest.BodyPublisher body = (request.getBody().length > 0) 
+                ? HttpRequest.BodyPublishers.ofByteArray(request.getBody()) 
+                : HttpRequest.BodyPublishers.noBody();
+        HttpRequest.Builder bld = HttpRequest.newBuilder(URI.create(request.getUri()))
+                .timeout((request.getResponseTimeout() != null) ? request.getResponseTimeout() : responseTimeout)
+                .method(request.getMethod(), body)
+                .header("Content-Type", JSON_UTF8);
+        for (int i = 0; i < request.getHeaderCount(); i++)
+        {
+            // the JDK sets Host from the URI and refuses it as a user header
+            if (!"Host".equalsIgnoreCase(request.getHeaderName(i)))
+            {
+                bld.header(request.getHeaderName(i), request.getHeaderValue(i));
+            }
+        }
+        return bld.build();
+    }
+
+    /**
+     * Send the request and wait for its response, which is read in memory: 
+     * the exchange runs asynchronously so that aborting the request cancels 
+     * it, while the body stream of a blocking send cannot be interrupted.
+     */
+    @Override
+    public <T> T execute(SatisRequest request, SatisResponseReader<T> reader) throws IOException
+    {
+        CompletableFuture<T> exchange = executeAsync(request, reader);
+        request.onAbort(() -> exchange.cancel(true));
+        try
+        {
+            return exchange.get();
+        }
+        catch (InterruptedException ex)
+        {
+            exchange.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        }
+        catch (CancellationException ex)
+        {
+            throw new InterruptedIOException("Request aborted");
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof IOException)
+            {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> executeAsync(SatisRequest request, SatisResponseReader<T> reader)
+    {
+        CompletableFuture<HttpResponse<byte[]>> exchange = httpClient.sendAsync(buildRequest(request), HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<T> retVal = exchange.thenApply(resp -> 
+        {
+            try
+            {
+                return reader.read(resp.statusCode(), resp.headers().firstValue("Content-Type").orElse(null), new ByteArrayInputStream(resp.body()));
+            }
+            catch (SatisApiException ex)
+            {
+                throw withRetryAfter(ex, resp);
+            }
+            catch (IOException ex)
+            {
+                throw new CompletionException(ex);
+            }
+        });
+        retVal.whenComplete((result, ex) -> 
+        {
+            if (retVal.isCancelled())
+            {
+                exchange.cancel(true);
+            }
+        });
+        return retVal;
+    }
+    
+    private static SatisApiException withRetryAfter(SatisApiException ex, HttpResponse<?> resp)
+    {
+        ex.setRetryAfter(SatisDates.parseRetryAfter(resp.headers().firstValue("Retry-After").orElse(null)));
+        return ex;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to the virtual threads of Java 21.
+ *
+ * @author journeyman
+ */
+public final class VirtualThreads
+{
+    private VirtualThreads()
+    {
+    }
+    
+    /**
+     * Tells if the running JVM supports virtual threads.
+     * @return true on Java 21 or later
+     */
+    public static boolean isSupported()
+    {
+        return true;
+    }
+    
+    /**
+     * Create an executor starting a new virtual thread for each task.
+     * @param prefix the prefix of the thread names
+     * @return the executor
+     */
+    public static ExecutorService newExecutor(String prefix)
+    {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix + "-", 1).factory());
+    }
+}
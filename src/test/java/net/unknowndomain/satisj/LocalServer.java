@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import net.unknowndomain.satisj.auth.SatisAuth;
+import net.unknowndomain.satisj.transport.SatisRequest;
+import net.unknowndomain.satisj.transport.SatisResponseReader;
+import net.unknowndomain.satisj.transport.SatisTransport;
+import net.unknowndomain.satisj.transport.SatisTransportFactory;
+
+/**
+ * A local HTTP server standing for the staging environment, for the tests 
+ * which send real requests.
+ *
+ * @author journeyman
+ */
+public class LocalServer implements AutoCloseable
+{
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private final String base;
+    
+    public LocalServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(handlers);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    /**
+     * A key pair for clients whose requests are not verified.
+     * @return the authentication
+     * @throws Exception if the key cannot be generated
+     */
+    public static SatisAuth auth() throws Exception
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keys = generator.generateKeyPair();
+        Constructor<SatisAuth> constructor = SatisAuth.class.getDeclaredConstructor(PrivateKey.class, PublicKey.class, String.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(keys.getPrivate(), keys.getPublic(), "test-key");
+    }
+    
+    /**
+     * Send a JSON response.
+     * @param exchange the exchange
+     * @param status the HTTP status
+     * @param body the JSON body
+     * @throws IOException if the client went away
+     */
+    public static void json(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(bytes);
+        }
+    }
+    
+    public void handle(String path, HttpHandler handler)
+    {
+        server.createContext(path, handler);
+    }
+    
+    /**
+     * A transport sending the requests for the staging environment to this 
+     * server instead.
+     * @param factory the actual transport
+     * @return the factory of the redirected transport
+     */
+    public SatisTransportFactory redirect(SatisTransportFactory factory)
+    {
+        String staging = Environment.STAGING.getEndpoint().getProtocol() + "://" + Environment.STAGING.getEndpoint().getAuthority();
+        return config -> 
+        {
+            SatisTransport transport = factory.create(config);
+            return new SatisTransport()
+            {
+                private SatisRequest local(SatisRequest request)
+                {
+                    String[] headers = new String[request.getHeaderCount() * 2];
+                    for (int i = 0; i < request.getHeaderCount(); i++)
+                    {
+                        headers[2 * i] = request.getHeaderName(i);
+                        headers[2 * i + 1] = request.getHeaderValue(i);
+                    }
+                    SatisRequest retVal = new SatisRequest(request.getMethod(), request.getUri().replace(staging, base), headers, request.getBody(), request.getResponseTimeout());
+                    request.onAbort(retVal::abort);
+                    return retVal;
+                }
+                
+                @Override
+                public <T> T execute(SatisRequest request, SatisResponseReader<T> reader) throws IOException
+                {
+                    return transport.execute(local(request), reader);
+                }
+
+                @Override
+                public <T> CompletableFuture<T> executeAsync(SatisRequest request, SatisResponseReader<T> reader)
+                {
+                    return transport.executeAsync(local(request), reader);
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    transport.close();
+                }
+            };
+        };
+    }
+    
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+}
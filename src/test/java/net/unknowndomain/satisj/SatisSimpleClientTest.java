@@ -0,0 +1,239 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj;
+
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.unknowndomain.satisj.common.SatisApiCall;
+import net.unknowndomain.satisj.common.SatisApiGroup;
+import net.unknowndomain.satisj.common.SatisBatchResult;
+import net.unknowndomain.satisj.common.SatisClientConfig;
+import net.unknowndomain.satisj.payment.Payment;
+import net.unknowndomain.satisj.resilience.CircuitBreakerPolicy;
+import net.unknowndomain.satisj.resilience.HedgingPolicy;
+import net.unknowndomain.satisj.resilience.RetryPolicy;
+import net.unknowndomain.satisj.transport.ApacheClassicTransport;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Hedging, retries and cancellation of the blocking client against a local 
+ * server.
+ *
+ * @author journeyman
+ */
+public class SatisSimpleClientTest
+{
+    private static SatisClientConfig hedged(LocalServer server, int maxConcurrentHedges)
+    {
+        return new SatisClientConfig()
+                .transport(server.redirect(ApacheClassicTransport::new))
+                .circuitBreaker(new CircuitBreakerPolicy().minimumCalls(100))
+                .hedging(new HedgingPolicy()
+                        .percentile(0)
+                        .delay(Duration.ofMillis(100))
+                        .maxConcurrentHedges(maxConcurrentHedges));
+    }
+    
+    @Test
+    public void secondAttemptAbortsTheFirst() throws Exception
+    {
+        AtomicInteger hits = new AtomicInteger();
+        CountDownLatch never = new CountDownLatch(1);
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments/", exchange -> 
+            {
+                if (hits.incrementAndGet() == 1)
+                {
+                    try
+                    {
+                        never.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}");
+            });
+            SatisClientConfig config = hedged(server, 1).maxConnections(2).maxConnectionsPerRoute(2);
+            try (SatisSimpleClient client = new SatisSimpleClient(Environment.STAGING, LocalServer.auth(), config))
+            {
+                long start = System.nanoTime();
+                Payment payment = client.payment().retrieve().id("payment-1").build().execute();
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertEquals("payment-1", payment.getId());
+                assertEquals(2, hits.get());
+                // the calling thread was blocked reading the first response
+                assertTrue(elapsed < 2000, elapsed + " ms");
+                // the aborted attempt is neither a failure nor a success
+                assertEquals(0.0, client.getCircuitBreaker(SatisApiGroup.PAYMENT).getFailureRate());
+                // and it gave its connection back to the pool, which two calls need
+                start = System.nanoTime();
+                CompletableFuture.allOf(
+                        client.payment().retrieve().id("payment-1").build().queue(),
+                        client.payment().retrieve().id("payment-1").build().queue()).get(5, TimeUnit.SECONDS);
+                elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue(elapsed < 2000, elapsed + " ms");
+            }
+        }
+    }
+    
+    @Test
+    public void busyHedgingPoolSkipsTheHedge() throws Exception
+    {
+        AtomicInteger hits = new AtomicInteger();
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments/", exchange -> 
+            {
+                hits.incrementAndGet();
+                try
+                {
+                    Thread.sleep(600);
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}");
+            });
+            ExecutorService callers = Executors.newFixedThreadPool(2);
+            try (SatisSimpleClient client = new SatisSimpleClient(Environment.STAGING, LocalServer.auth(), hedged(server, 1)))
+            {
+                Future<Payment> first = callers.submit(() -> client.payment().retrieve().id("payment-1").build().execute());
+                Future<Payment> second = callers.submit(() -> client.payment().retrieve().id("payment-2").build().execute());
+                assertEquals("payment-1", first.get(5, TimeUnit.SECONDS).getId());
+                assertEquals("payment-1", second.get(5, TimeUnit.SECONDS).getId());
+                // two first attempts and a single hedge
+                assertEquals(3, hits.get());
+            }
+            finally
+            {
+                callers.shutdownNow();
+            }
+        }
+    }
+    
+    @Test
+    public void cancelledBatchSendsNoPendingCall() throws Exception
+    {
+        AtomicInteger hits = new AtomicInteger();
+        CountDownLatch never = new CountDownLatch(1);
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments/", exchange -> 
+            {
+                if (hits.incrementAndGet() == 1)
+                {
+                    try
+                    {
+                        never.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}");
+            });
+            SatisClientConfig config = new SatisClientConfig()
+                    .transport(server.redirect(ApacheClassicTransport::new))
+                    .workerThreads(1);
+            try (SatisSimpleClient client = new SatisSimpleClient(Environment.STAGING, LocalServer.auth(), config))
+            {
+                List<SatisApiCall<Payment>> calls = new ArrayList<>();
+                for (int i = 0; i < 5; i++)
+                {
+                    calls.add(client.payment().retrieve().id("payment-" + i).build());
+                }
+                TestSubscriber<SatisBatchResult<Payment>> results = client.batch(calls, 5).test();
+                long start = System.nanoTime();
+                while ((hits.get() == 0) && (System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2)))
+                {
+                    Thread.sleep(10);
+                }
+                assertEquals(1, hits.get());
+                results.cancel();
+                // the running call was aborted, so the only worker is free again
+                start = System.nanoTime();
+                assertEquals("payment-1", client.payment().retrieve().id("payment-1").build().queue().get(2, TimeUnit.SECONDS).getId());
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+                // the four calls queued behind it were never sent
+                assertEquals(2, hits.get());
+                results.assertNoValues();
+            }
+        }
+    }
+    
+    @Test
+    public void retryIsSignedAgainWithTheSameKey() throws Exception
+    {
+        List<String> keys = new CopyOnWriteArrayList<>();
+        List<String> dates = new CopyOnWriteArrayList<>();
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments", exchange -> 
+            {
+                keys.add(exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+                dates.add(exchange.getRequestHeaders().getFirst("Date"));
+                if (keys.size() == 1)
+                {
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    LocalServer.json(exchange, 503, "{\"code\":503,\"message\":\"Busy\"}");
+                }
+                else
+                {
+                    LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}");
+                }
+            });
+            SatisClientConfig config = new SatisClientConfig()
+                    .transport(server.redirect(ApacheClassicTransport::new))
+                    .retryPolicy(new RetryPolicy().jitter(0));
+            try (SatisSimpleClient client = new SatisSimpleClient(Environment.STAGING, LocalServer.auth(), config))
+            {
+                long start = System.nanoTime();
+                Payment payment = client.payment().create()
+                        .matchCode()
+                        .amount(BigDecimal.TEN)
+                        .currency("EUR")
+                        .build()
+                        .execute();
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertEquals("payment-1", payment.getId());
+                assertEquals(2, keys.size());
+                assertEquals(keys.get(0), keys.get(1));
+                // the Retry-After of a second is longer than the backoff, and the retry has a Date of its own
+                assertTrue(elapsed >= 1000, elapsed + " ms");
+                assertNotEquals(dates.get(0), dates.get(1));
+            }
+        }
+    }
+}
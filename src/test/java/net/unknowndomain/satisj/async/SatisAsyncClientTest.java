@@ -0,0 +1,181 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.async;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.unknowndomain.satisj.Environment;
+import net.unknowndomain.satisj.LocalServer;
+import net.unknowndomain.satisj.common.SatisApiException;
+import net.unknowndomain.satisj.common.SatisClientConfig;
+import net.unknowndomain.satisj.payment.Payment;
+import net.unknowndomain.satisj.resilience.HedgingPolicy;
+import net.unknowndomain.satisj.resilience.RetryPolicy;
+import net.unknowndomain.satisj.transport.ApacheAsyncTransport;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The async client against a local server.
+ *
+ * @author journeyman
+ */
+public class SatisAsyncClientTest
+{
+    private static SatisClientConfig hedged(LocalServer server, int maxConcurrentHedges)
+    {
+        return new SatisClientConfig()
+                .transport(server.redirect(ApacheAsyncTransport::new))
+                .hedging(new HedgingPolicy()
+                        .percentile(0)
+                        .delay(Duration.ofMillis(100))
+                        .maxConcurrentHedges(maxConcurrentHedges));
+    }
+    
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @Test
+    public void failedFirstAttemptWaitsForTheHedge() throws Exception
+    {
+        AtomicInteger hits = new AtomicInteger();
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments/", exchange -> 
+            {
+                if (hits.incrementAndGet() == 1)
+                {
+                    sleep(300);
+                    LocalServer.json(exchange, 500, "{\"code\":500,\"message\":\"Internal error\"}");
+                }
+                else
+                {
+                    sleep(600);
+                    LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}");
+                }
+            });
+            try (SatisAsyncClient client = new SatisAsyncClient(Environment.STAGING, LocalServer.auth(), hedged(server, 1)))
+            {
+                Payment payment = client.payment().retrieve().id("payment-1").build().queue().get(5, TimeUnit.SECONDS);
+                assertEquals("payment-1", payment.getId());
+                assertEquals(2, hits.get());
+            }
+        }
+    }
+    
+    @Test
+    public void hedgesInFlightAreBounded() throws Exception
+    {
+        AtomicInteger hits = new AtomicInteger();
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments/", exchange -> 
+            {
+                hits.incrementAndGet();
+                sleep(600);
+                LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}");
+            });
+            try (SatisAsyncClient client = new SatisAsyncClient(Environment.STAGING, LocalServer.auth(), hedged(server, 1)))
+            {
+                CompletableFuture.allOf(
+                        client.payment().retrieve().id("payment-1").build().queue(),
+                        client.payment().retrieve().id("payment-2").build().queue(),
+                        client.payment().retrieve().id("payment-3").build().queue()).get(5, TimeUnit.SECONDS);
+                // three first attempts and a single hedge
+                assertEquals(4, hits.get());
+            }
+        }
+    }
+    
+    @Test
+    public void malformedErrorKeepsItsStatus() throws Exception
+    {
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments/", exchange -> LocalServer.json(exchange, 503, "{\"code\":503,\"message\":"));
+            SatisClientConfig config = new SatisClientConfig()
+                    .transport(server.redirect(ApacheAsyncTransport::new));
+            try (SatisAsyncClient client = new SatisAsyncClient(Environment.STAGING, LocalServer.auth(), config))
+            {
+                ExecutionException ex = assertThrows(ExecutionException.class, () -> client.payment().retrieve().id("payment-1").build().queue().get(5, TimeUnit.SECONDS));
+                assertEquals(503, assertInstanceOf(SatisApiException.class, ex.getCause()).getStatus());
+            }
+        }
+    }
+    
+    @Test
+    public void retryIsSignedAgainWithTheSameKey() throws Exception
+    {
+        List<String> keys = new CopyOnWriteArrayList<>();
+        List<String> dates = new CopyOnWriteArrayList<>();
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments", exchange -> 
+            {
+                keys.add(exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+                dates.add(exchange.getRequestHeaders().getFirst("Date"));
+                if (keys.size() == 1)
+                {
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    LocalServer.json(exchange, 503, "{\"code\":503,\"message\":\"Busy\"}");
+                }
+                else
+                {
+                    LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}");
+                }
+            });
+            SatisClientConfig config = new SatisClientConfig()
+                    .transport(server.redirect(ApacheAsyncTransport::new))
+                    .retryPolicy(new RetryPolicy().jitter(0));
+            try (SatisAsyncClient client = new SatisAsyncClient(Environment.STAGING, LocalServer.auth(), config))
+            {
+                long start = System.nanoTime();
+                Payment payment = client.payment().create()
+                        .matchCode()
+                        .amount(BigDecimal.TEN)
+                        .currency("EUR")
+                        .build()
+                        .execute();
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertEquals("payment-1", payment.getId());
+                assertEquals(2, keys.size());
+                assertEquals(keys.get(0), keys.get(1));
+                // the Retry-After of a second is longer than the backoff, and the retry has a Date of its own
+                assertTrue(elapsed >= 1000, elapsed + " ms");
+                assertNotEquals(dates.get(0), dates.get(1));
+            }
+        }
+    }
+}
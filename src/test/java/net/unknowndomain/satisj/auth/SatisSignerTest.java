@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Signature;
+import java.util.Base64;
+import net.unknowndomain.satisj.LocalServer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Signatures made with the pooled engines.
+ *
+ * @author journeyman
+ */
+public class SatisSignerTest
+{
+    private static String header(String[] headers, String name)
+    {
+        for (int i = 0; i < headers.length; i += 2)
+        {
+            if (headers[i].equals(name))
+            {
+                return headers[i + 1];
+            }
+        }
+        return null;
+    }
+    
+    @Test
+    public void pooledEnginesSignEachRequestAlone() throws Exception
+    {
+        SatisAuth auth = LocalServer.auth();
+        SatisSigner signer = new SatisSigner(auth, "staging.authservices.satispay.com", "satisj");
+        String[][] requests = {
+            { "POST", "/g_business/v1/payments", "Mon, 04 Jan 2021 10:00:00 +0000", "47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=" },
+            { "GET", "/g_business/v1/payments/è", "Mon, 04 Jan 2021 10:00:01 +0000", "47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=" },
+            { "PUT", "/g_business/v1/payments/payment-1", "Mon, 04 Jan 2021 10:00:02 +0000", "z4PhNX7vuL3xVChQ1m2AB9Yg5AULVxXcg/SpIdNs6c5H0NE8XYXysP+DGNKHfuwvY7kxvUdBeoGlODJ6+SfaPg==" }
+        };
+        for (String[] request : requests)
+        {
+            String[] headers = signer.sign(request[0], request[1], request[2], request[3], "key-1", new String[]{ "x-satispay-os", "linux" });
+            assertEquals("linux", header(headers, "x-satispay-os"));
+            assertEquals(request[2], header(headers, "Date"));
+            assertEquals("key-1", header(headers, "Idempotency-Key"));
+            String authorization = header(headers, "Authorization");
+            String signature = authorization.substring(authorization.indexOf("signature=\"") + 11, authorization.length() - 1);
+            String signing = "(request-target): " + request[0].toLowerCase() + " " + request[1] 
+                    + "\nhost: staging.authservices.satispay.com"
+                    + "\ndate: " + request[2]
+                    + "\ndigest: SHA-256=" + request[3];
+            Signature verifier = Signature.getInstance("SHA256withRSA");
+            verifier.initVerify(auth.getPublicKey());
+            verifier.update(signing.getBytes(StandardCharsets.UTF_8));
+            assertTrue(verifier.verify(Base64.getDecoder().decode(signature)), request[1]);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import net.unknowndomain.satisj.consumer.Consumer;
+import net.unknowndomain.satisj.resilience.RetryPolicy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks how responses are decoded and whether their failures are retried.
+ *
+ * @author journeyman
+ */
+public class JsonResponseReaderTest
+{
+    private final JsonResponseReader<Consumer> reader = new JsonResponseReader<>(new SatisCodec(new SatisClientConfig()), Consumer.class);
+    private final RetryPolicy retry = new RetryPolicy().budget(null);
+    
+    private static ByteArrayInputStream body(String text)
+    {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void json() throws IOException
+    {
+        assertEquals("c-1", reader.read(200, "application/json; charset=utf-8", body("{\"id\":\"c-1\"}")).getId());
+        SatisApiException ex = assertThrows(SatisApiException.class, () -> reader.read(404, "application/json", body("{\"code\":41201,\"message\":\"Not found\"}")));
+        assertEquals(404, ex.getStatus());
+        assertEquals(41201L, ex.getError().getCode());
+        assertEquals("Not found", ex.getMessage());
+    }
+    
+    @Test
+    public void successWithoutJsonIsNotRetried()
+    {
+        SatisApiException ex = assertThrows(SatisApiException.class, () -> reader.read(201, "text/html", body("<html>accepted</html>")));
+        assertEquals(201, ex.getStatus());
+        assertEquals("Unexpected Content-Type text/html", ex.getMessage());
+        assertEquals(-1, retry.retryDelay("POST", 1, ex));
+    }
+    
+    @Test
+    public void errorPageIsRetriedByStatus()
+    {
+        SatisApiException ex = assertThrows(SatisApiException.class, () -> reader.read(503, "text/html", body("<html>busy</html>")));
+        assertEquals("<html>busy</html>", ex.getMessage());
+        assertTrue(retry.retryDelay("POST", 1, ex) >= 0);
+        ex = assertThrows(SatisApiException.class, () -> reader.read(500, "text/plain", body("oops")));
+        assertEquals(-1, retry.retryDelay("POST", 1, ex));
+    }
+    
+    @Test
+    public void malformedErrorKeepsItsStatus()
+    {
+        SatisApiException ex = assertThrows(SatisApiException.class, () -> reader.read(503, "application/json", body("{\"code\":")));
+        assertEquals(503, ex.getStatus());
+        assertTrue(retry.retryDelay("POST", 1, ex) >= 0);
+        ex = assertThrows(SatisApiException.class, () -> reader.read(429, null, body("<html>slow down</html>")));
+        assertEquals(429, ex.getStatus());
+    }
+    
+    @Test
+    public void ioErrorsAreRetried()
+    {
+        assertTrue(retry.retryDelay("PUT", 1, new IOException("reset")) >= 0);
+        assertEquals(-1, retry.retryDelay("PUT", 3, new IOException("reset")));
+        assertEquals(-1, retry.retryDelay("DELETE", 1, new IOException("reset")));
+        assertEquals(-1, retry.retryDelay("GET", 1, assertThrows(IOException.class, () -> reader.read(200, "application/json", body("{\"id\":")))));
+    }
+}
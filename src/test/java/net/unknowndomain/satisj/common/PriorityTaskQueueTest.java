@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Order and capacity of the priority work queue.
+ *
+ * @author journeyman
+ */
+public class PriorityTaskQueueTest
+{
+    @Test
+    public void tasksAreServedByPriority()
+    {
+        PriorityTaskQueue queue = new PriorityTaskQueue(10, TimeUnit.SECONDS.toNanos(10));
+        List<String> order = new ArrayList<>();
+        queue.offer(PriorityTaskQueue.task(SatisPriority.LOW, () -> order.add("low")));
+        queue.offer(() -> order.add("plain"));
+        queue.offer(PriorityTaskQueue.task(SatisPriority.HIGH, () -> order.add("high")));
+        queue.offer(PriorityTaskQueue.task(SatisPriority.NORMAL, () -> order.add("normal")));
+        assertEquals(2, queue.size(SatisPriority.NORMAL));
+        while (!queue.isEmpty())
+        {
+            queue.poll().run();
+        }
+        assertEquals("[high, plain, normal, low]", order.toString());
+    }
+    
+    @Test
+    public void fullQueueRefusesTasks()
+    {
+        PriorityTaskQueue queue = new PriorityTaskQueue(2, 0);
+        assertTrue(queue.offer(() -> {}));
+        assertEquals(1, queue.remainingCapacity());
+        assertTrue(queue.offer(() -> {}));
+        assertFalse(queue.offer(() -> {}));
+        assertEquals(0, queue.remainingCapacity());
+        queue.poll();
+        assertTrue(queue.offer(() -> {}));
+    }
+    
+    @Test
+    public void concurrentOffersStayWithinCapacity() throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            for (int round = 0; round < 200; round++)
+            {
+                PriorityTaskQueue queue = new PriorityTaskQueue(5, 0);
+                AtomicInteger accepted = new AtomicInteger();
+                CountDownLatch start = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(8);
+                for (int i = 0; i < 8; i++)
+                {
+                    executor.execute(() -> 
+                    {
+                        try
+                        {
+                            start.await();
+                            if (queue.offer(() -> {}))
+                            {
+                                accepted.incrementAndGet();
+                            }
+                        }
+                        catch (InterruptedException ex)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        done.countDown();
+                    });
+                }
+                start.countDown();
+                assertTrue(done.await(5, TimeUnit.SECONDS));
+                assertEquals(5, accepted.get());
+                assertEquals(5, queue.size());
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import com.sun.net.httpserver.Headers;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import net.unknowndomain.satisj.Environment;
+import net.unknowndomain.satisj.LocalServer;
+import net.unknowndomain.satisj.SatisSimpleClient;
+import net.unknowndomain.satisj.async.SatisAsyncClient;
+import net.unknowndomain.satisj.auth.SatisAuth;
+import net.unknowndomain.satisj.payment.Payment;
+import net.unknowndomain.satisj.payment.api.PaymentDetailsBuilder;
+import net.unknowndomain.satisj.resilience.CircuitBreakerOpenException;
+import net.unknowndomain.satisj.resilience.CircuitBreakerPolicy;
+import net.unknowndomain.satisj.resilience.DeadlineExceededException;
+import net.unknowndomain.satisj.resilience.HedgingPolicy;
+import net.unknowndomain.satisj.resilience.RateLimitPolicy;
+import net.unknowndomain.satisj.resilience.TokenBucket;
+import net.unknowndomain.satisj.transport.ApacheAsyncTransport;
+import net.unknowndomain.satisj.transport.ApacheClassicTransport;
+import net.unknowndomain.satisj.transport.SatisRequest;
+import net.unknowndomain.satisj.transport.SatisResponseReader;
+import net.unknowndomain.satisj.transport.SatisTransport;
+import net.unknowndomain.satisj.transport.SatisTransportFactory;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the config, the headers, the rate limit and the deadlines of a 
+ * client.
+ *
+ * @author journeyman
+ */
+public class SatisApiTest
+{
+    @Test
+    public void laterConfigChangesDoNotReachTheClient() throws Exception
+    {
+        SatisClientConfig config = new SatisClientConfig()
+                .responseTimeout(Duration.ofSeconds(5))
+                .hedging(new HedgingPolicy().delay(Duration.ofMillis(50)).percentile(0.95))
+                .rateLimit(new RateLimitPolicy().paymentReads(1000).timeout(Duration.ofSeconds(1)));
+        SatisAuth auth = LocalServer.auth();
+        try (SatisSimpleClient simple = new SatisSimpleClient(Environment.STAGING, auth, config);
+                SatisAsyncClient async = new SatisAsyncClient(Environment.STAGING, auth, config))
+        {
+            config.hedging(null).rateLimit(null).responseTimeout(Duration.ofMillis(1));
+            for (SatisApi api : new SatisApi[]{ simple, async })
+            {
+                SatisApiCall call = new PaymentDetailsBuilder(api).id("payment-1").build();
+                assertEquals(TimeUnit.MILLISECONDS.toNanos(50), api.hedgeDelay(call));
+                assertEquals(0, api.reservePermit(call));
+                assertNotNull(api.getRateLimiter(call.getGroup(), call.getMethod()));
+                assertEquals(Duration.ofSeconds(5), api.config.getResponseTimeout());
+            }
+        }
+    }
+    
+    @Test
+    public void deviceTypeIsSentWithoutAppName() throws Exception
+    {
+        AtomicReference<Headers> received = new AtomicReference<>();
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments/", exchange -> 
+            {
+                received.set(exchange.getRequestHeaders());
+                LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}");
+            });
+            SatisClientConfig config = new SatisClientConfig()
+                    .transport(server.redirect(ApacheClassicTransport::new));
+            try (SatisSimpleClient client = new SatisSimpleClient(Environment.STAGING, LocalServer.auth(), config))
+            {
+                client.setDeviceType("POS");
+                client.payment().retrieve().id("payment-1").build().execute();
+                assertEquals("POS", received.get().getFirst("x-satispay-devicetype"));
+                assertNull(received.get().getFirst("x-satispay-appn"));
+                client.setAppName("till");
+                client.payment().retrieve().id("payment-1").build().execute();
+                assertEquals("till", received.get().getFirst("x-satispay-appn"));
+            }
+        }
+    }
+    
+    private static SatisClientConfig breakerOpeningAtOnce(LocalServer server)
+    {
+        return new SatisClientConfig()
+                .circuitBreaker(new CircuitBreakerPolicy()
+                        .minimumCalls(1)
+                        .failureRateThreshold(0.5)
+                        .openDuration(Duration.ofMinutes(1)))
+                .rateLimit(new RateLimitPolicy()
+                        .limit(SatisApiGroup.PAYMENT, "GET", 1, 3)
+                        .timeout(Duration.ZERO));
+    }
+    
+    @Test
+    public void rejectedCallsKeepTheRateLimitBudget() throws Exception
+    {
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments/", exchange -> LocalServer.json(exchange, 500, "{\"code\":500}"));
+            SatisAuth auth = LocalServer.auth();
+            try (SatisSimpleClient simple = new SatisSimpleClient(Environment.STAGING, auth, breakerOpeningAtOnce(server)
+                    .transport(server.redirect(ApacheClassicTransport::new)));
+                    SatisAsyncClient async = new SatisAsyncClient(Environment.STAGING, auth, breakerOpeningAtOnce(server)
+                    .transport(server.redirect(ApacheAsyncTransport::new))))
+            {
+                for (SatisApi api : new SatisApi[]{ simple, async })
+                {
+                    assertEquals(500, assertThrows(SatisApiException.class, () -> api.payment().retrieve().id("payment-1").build().execute()).getStatus());
+                    // the breaker is open: without a refund the two permits left would go, then the rate limit would reject
+                    for (int i = 0; i < 5; i++)
+                    {
+                        assertThrows(CircuitBreakerOpenException.class, () -> api.payment().retrieve().id("payment-1").build().execute());
+                    }
+                    TokenBucket bucket = api.getRateLimiter(SatisApiGroup.PAYMENT, "GET");
+                    assertTrue(bucket.getAvailablePermits() >= 1.9, String.valueOf(bucket.getAvailablePermits()));
+                }
+            }
+        }
+    }
+    
+    /**
+     * The blocking transport, keeping the requests it was given: a request 
+     * is signed when it is prepared, just before being handed over.
+     */
+    private static SatisTransportFactory recording(List<SatisRequest> requests)
+    {
+        return config -> 
+        {
+            SatisTransport transport = new ApacheClassicTransport(config);
+            return new SatisTransport()
+            {
+                @Override
+                public <T> T execute(SatisRequest request, SatisResponseReader<T> reader) throws IOException
+                {
+                    requests.add(request);
+                    return transport.execute(request, reader);
+                }
+
+                @Override
+                public <T> CompletableFuture<T> executeAsync(SatisRequest request, SatisResponseReader<T> reader)
+                {
+                    requests.add(request);
+                    return transport.executeAsync(request, reader);
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    transport.close();
+                }
+            };
+        };
+    }
+    
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @Test
+    public void callExpiredWhileQueuedIsNotSent() throws Exception
+    {
+        List<SatisRequest> requests = new CopyOnWriteArrayList<>();
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments", exchange -> 
+            {
+                sleep(500);
+                LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}");
+            });
+            SatisClientConfig config = new SatisClientConfig()
+                    .transport(server.redirect(recording(requests)))
+                    .workerThreads(1);
+            try (SatisSimpleClient client = new SatisSimpleClient(Environment.STAGING, LocalServer.auth(), config))
+            {
+                CompletableFuture<Payment> first = client.payment().retrieve().id("payment-1").build().queue();
+                // the payment expires while the only worker is busy with the first call
+                CompletableFuture<Payment> expiring = client.payment().create()
+                        .matchCode()
+                        .amount(BigDecimal.TEN)
+                        .currency("EUR")
+                        .expirationDate(Instant.now().plusMillis(200))
+                        .build()
+                        .queue();
+                assertEquals("payment-1", first.get(5, TimeUnit.SECONDS).getId());
+                ExecutionException ex = assertThrows(ExecutionException.class, () -> expiring.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(DeadlineExceededException.class, ex.getCause());
+                // neither signed nor sent
+                assertEquals(1, requests.size());
+                assertEquals("GET", requests.get(0).getMethod());
+            }
+        }
+    }
+    
+    @Test
+    public void responseTimeoutIsCappedByTheDeadline() throws Exception
+    {
+        List<SatisRequest> requests = new CopyOnWriteArrayList<>();
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments/", exchange -> 
+            {
+                sleep(3000);
+                LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}");
+            });
+            SatisClientConfig config = new SatisClientConfig()
+                    .transport(server.redirect(recording(requests)))
+                    .responseTimeout(Duration.ofSeconds(10));
+            try (SatisSimpleClient client = new SatisSimpleClient(Environment.STAGING, LocalServer.auth(), config))
+            {
+                long start = System.nanoTime();
+                assertThrows(SatisApiException.class, () -> client.payment().retrieve().id("payment-1").build()
+                        .timeout(Duration.ofMillis(300))
+                        .execute());
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue(elapsed < 2000, elapsed + " ms");
+                assertEquals(1, requests.size());
+                Duration responseTimeout = requests.get(0).getResponseTimeout();
+                assertTrue(responseTimeout.compareTo(Duration.ofMillis(300)) <= 0, String.valueOf(responseTimeout));
+                assertTrue(responseTimeout.compareTo(Duration.ofMillis(100)) > 0, String.valueOf(responseTimeout));
+            }
+        }
+    }
+}
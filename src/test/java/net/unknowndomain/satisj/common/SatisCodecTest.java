@@ -0,0 +1,179 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import net.unknowndomain.satisj.authorization.Authorization;
+import net.unknowndomain.satisj.authorization.api.CreateAuthorizationBuilder;
+import net.unknowndomain.satisj.authorization.api.UpdateAuthorizationBuilder;
+import net.unknowndomain.satisj.consumer.Consumer;
+import net.unknowndomain.satisj.payment.Actor;
+import net.unknowndomain.satisj.payment.Payment;
+import net.unknowndomain.satisj.payment.api.CreatePaymentBuilder;
+import net.unknowndomain.satisj.payment.api.UpdatePaymentBuilder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the streaming serializers of SatisCodec produce and read 
+ * exactly what Jackson does by reflection on the annotated fields.
+ *
+ * @author journeyman
+ */
+public class SatisCodecTest
+{
+    private final ObjectMapper reflective = SatisApi.Tools.JSON_MAPPER.copy();
+    private final ObjectMapper streaming = SatisApi.Tools.JSON_MAPPER.copy().registerModule(SatisCodec.streamingModule());
+    
+    private static Map<String, String> metadata()
+    {
+        Map<String, String> retVal = new HashMap<>();
+        retVal.put("order_id", "A-42");
+        retVal.put("note", "quoted \"text\" and unicode è");
+        return retVal;
+    }
+    
+    private void assertSameJson(Object call) throws Exception
+    {
+        JsonNode expected = reflective.readTree(reflective.writeValueAsBytes(call));
+        JsonNode actual = reflective.readTree(streaming.writeValueAsBytes(call));
+        assertEquals(expected, actual, call.getClass().getSimpleName());
+    }
+    
+    private <T> void assertSameModel(String json, Class<T> clazz) throws Exception
+    {
+        T expected = reflective.readValue(json, clazz);
+        T actual = streaming.readValue(json, clazz);
+        assertEquals(reflective.valueToTree(expected), reflective.valueToTree(actual), clazz.getSimpleName());
+    }
+    
+    @Test
+    public void createPayment() throws Exception
+    {
+        assertSameJson(new CreatePaymentBuilder(null)
+                .amount(new BigDecimal("12.34"))
+                .currency("EUR")
+                .externalCode("ext-1")
+                .callbackUrl("https://example.com/cb?id={uuid}")
+                .redirectUrl("https://example.com/done")
+                .expirationDate(Instant.parse("2030-03-18T15:10:24.123Z"))
+                .metadata(metadata())
+                .build());
+        assertSameJson(new CreatePaymentBuilder(null)
+                .refund("parent-1")
+                .amountUnit(-500)
+                .build());
+        assertSameJson(new CreatePaymentBuilder(null)
+                .matchUser("consumer-1")
+                .amountUnit(1)
+                .metadata(Collections.emptyMap())
+                .build());
+    }
+    
+    @Test
+    public void updatePayment() throws Exception
+    {
+        assertSameJson(new UpdatePaymentBuilder(null)
+                .accept()
+                .preAuthorized("payment-1")
+                .amount(new BigDecimal("7.50"))
+                .metadata(metadata())
+                .build());
+        assertSameJson(new UpdatePaymentBuilder(null)
+                .cancel()
+                .amountUnit(0)
+                .build());
+    }
+    
+    @Test
+    public void createAuthorization() throws Exception
+    {
+        assertSameJson(new CreateAuthorizationBuilder(null)
+                .reason("monthly subscription")
+                .callbackUrl("https://example.com/cb")
+                .metadata(metadata())
+                .build());
+        assertSameJson(new CreateAuthorizationBuilder(null).build());
+    }
+    
+    @Test
+    public void updateAuthorization() throws Exception
+    {
+        assertSameJson(new UpdateAuthorizationBuilder(null)
+                .id("authorization-1")
+                .cancel()
+                .consumerId("consumer-1")
+                .metadata(metadata())
+                .build());
+        assertSameJson(new UpdateAuthorizationBuilder(null).id("authorization-1").build());
+    }
+    
+    @Test
+    public void payment() throws Exception
+    {
+        assertSameModel("{\"id\":\"p-1\",\"code_identifier\":\"S6Y-PAY--1\",\"amount_unit\":1234,"
+                + "\"currency\":\"EUR\",\"type\":\"TO_BUSINESS\",\"status\":\"ACCEPTED\",\"expired\":false,"
+                + "\"metadata\":{\"order_id\":\"A-42\"},\"insert_date\":\"2019-03-18T15:10:24.123+0000\","
+                + "\"expire_date\":\"2019-03-18T15:25:24.000+01:00\",\"external_code\":\"ext-1\","
+                + "\"redirect_url\":null,\"status_ownership\":true,"
+                + "\"status_owner\":{\"id\":\"c-1\",\"type\":\"CONSUMER\",\"name\":\"Mario\"},"
+                + "\"receiver\":{\"id\":\"s-1\",\"type\":\"SHOP\",\"name\":\"Shop\"},"
+                + "\"sender\":{\"id\":\"c-1\",\"type\":\"CONSUMER\",\"name\":\"Mario\",\"extra\":[1,{\"a\":2}]},"
+                + "\"unknown\":{\"nested\":[true,null]}}", Payment.class);
+        assertSameModel("{\"id\":\"p-2\",\"amount_unit\":null,\"metadata\":null,\"sender\":null}", Payment.class);
+    }
+    
+    @Test
+    public void actor() throws Exception
+    {
+        assertSameModel("{\"id\":\"s-1\",\"type\":\"SHOP\",\"name\":\"Shop \\\"One\\\"\"}", Actor.class);
+        assertSameModel("{\"id\":\"c-1\",\"type\":null}", Actor.class);
+    }
+    
+    @Test
+    public void authorization() throws Exception
+    {
+        assertSameModel("{\"id\":\"a-1\",\"code_identifier\":\"AUTH-1\",\"shop_uid\":\"s-1\","
+                + "\"consumer_uid\":\"c-1\",\"reason\":\"subscription\",\"callback_url\":\"https://example.com/cb\","
+                + "\"status\":\"ACCEPTED\",\"metadata\":{\"order_id\":\"A-42\",\"count\":3,\"tags\":[\"x\",\"y\"]},"
+                + "\"unknown\":1}", Authorization.class);
+        assertSameModel("{\"id\":\"a-2\",\"metadata\":null}", Authorization.class);
+    }
+    
+    @Test
+    public void consumer() throws Exception
+    {
+        assertSameModel("{\"id\":\"c-1\",\"name\":\"ignored\",\"nested\":{\"id\":\"other\"}}", Consumer.class);
+    }
+    
+    @Test
+    public void malformedMetadataIsRejected()
+    {
+        for (String json : new String[]{ "{\"metadata\":[\"A-42\"]}", "{\"metadata\":{\"order\":{\"id\":\"A-42\"}}}" })
+        {
+            assertThrows(MismatchedInputException.class, () -> reflective.readValue(json, Payment.class), json);
+            assertThrows(MismatchedInputException.class, () -> streaming.readValue(json, Payment.class), json);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.common;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Random;
+import net.unknowndomain.satisj.payment.Payment;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares SatisDates with the java.time formatters it replaces.
+ *
+ * @author journeyman
+ */
+public class SatisDatesTest
+{
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US).withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter ISO_MILLIS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US).withZone(ZoneOffset.UTC);
+    
+    @Test
+    public void parseIso()
+    {
+        String[][] dates = {
+            { "2019-03-18T15:10:24Z", "2019-03-18T15:10:24Z" },
+            { "2019-03-18T15:10:24.123Z", "2019-03-18T15:10:24.123Z" },
+            { "2019-03-18T15:10:24.1z", "2019-03-18T15:10:24.100Z" },
+            { "2019-03-18t15:10:24.123456789Z", "2019-03-18T15:10:24.123456789Z" },
+            { "2019-03-18T15:10:24.123+01:00", "2019-03-18T14:10:24.123Z" },
+            { "2019-03-18T15:10:24.123-0530", "2019-03-18T20:40:24.123Z" },
+            { "2019-03-18T15:10:24+02", "2019-03-18T13:10:24Z" },
+            { "2019-03-18T15:10:24.000+0000", "2019-03-18T15:10:24Z" },
+            { "2020-02-29T23:59:59.999Z", "2020-02-29T23:59:59.999Z" },
+            { "2000-03-01T00:30:00+01:00", "2000-02-29T23:30:00Z" },
+            { "1969-12-31T23:59:59.5Z", "1969-12-31T23:59:59.500Z" },
+            { "0001-01-01T00:00:00Z", "0001-01-01T00:00:00Z" },
+            { "9999-12-31T23:59:59Z", "9999-12-31T23:59:59Z" }
+        };
+        for (String[] date : dates)
+        {
+            assertEquals(Instant.parse(date[1]), SatisDates.parseIso(date[0]), date[0]);
+        }
+    }
+    
+    @Test
+    public void parseIsoRejectsMalformedDates()
+    {
+        String[] dates = {
+            "",
+            "2019-03-18",
+            "2019-03-18T15:10:24",
+            "2019-03-18T15:10:24.123",
+            "2019-03-18T15:10:24.",
+            "2019-03-18T15:10:24.Z",
+            "2019-03-18T15:10:24.1234567890Z",
+            "2019-03-18T15:10:24+1",
+            "2019-03-18T15:10:24+01:0",
+            "2019-03-18T15:10:24+01-00",
+            "2019-03-18T15:10:24ZZ",
+            "2019-03-18 15:10:24Z",
+            "2019-13-18T15:10:24Z",
+            "2019-02-29T15:10:24Z",
+            "2019-03-18T24:10:24Z",
+            "2019-03-18T15:60:24Z",
+            "2019-03-18T15:10:60Z",
+            "2019-O3-18T15:10:24Z"
+        };
+        for (String date : dates)
+        {
+            assertThrows(DateTimeParseException.class, () -> SatisDates.parseIso(date), date);
+        }
+    }
+    
+    @Test
+    public void malformedDateIsAJsonError()
+    {
+        String json = "{\"id\":\"p-1\",\"insert_date\":\"2019-03-18T15:10:24.123\"}";
+        assertThrows(JsonMappingException.class, () -> SatisApi.Tools.JSON_MAPPER.readValue(json, Payment.class));
+        assertThrows(JsonMappingException.class, () -> SatisApi.Tools.JSON_MAPPER.copy().registerModule(SatisCodec.streamingModule()).readValue(json, Payment.class));
+    }
+    
+    @Test
+    public void formatIso()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++)
+        {
+            Instant instant = Instant.ofEpochSecond(random.nextInt() * 8L, random.nextInt(1000000000));
+            String expected = ISO_MILLIS.format(instant);
+            assertEquals(expected + "Z", SatisDates.formatIso(instant, true));
+            assertEquals(expected + "+0000", SatisDates.formatIso(instant, false));
+            assertEquals(instant.toEpochMilli(), SatisDates.parseIso(SatisDates.formatIso(instant, true)).toEpochMilli());
+        }
+        assertEquals("1970-01-01T00:00:00.000Z", SatisDates.formatIso(Instant.EPOCH, true));
+        assertEquals("1969-12-31T23:59:59.999+0000", SatisDates.formatIso(Instant.ofEpochMilli(-1L), false));
+    }
+    
+    @Test
+    public void formatHttpDate()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++)
+        {
+            long epochSecond = random.nextInt() * 8L;
+            assertEquals(HTTP_DATE.format(Instant.ofEpochSecond(epochSecond)), SatisDates.formatHttpDate(epochSecond));
+        }
+        assertEquals("Mon, 18 Mar 2019 15:10:24 +0000", SatisDates.formatHttpDate(1552921824L));
+        assertEquals("Thu, 01 Jan 1970 00:00:00 +0000", SatisDates.formatHttpDate(0L));
+        assertEquals("Wed, 31 Dec 1969 23:59:59 +0000", SatisDates.formatHttpDate(-1L));
+    }
+    
+    @Test
+    public void signDate()
+    {
+        String date = SatisDates.signDate();
+        long seconds = Math.abs(OffsetDateTime.parse(date, HTTP_DATE).toEpochSecond() - System.currentTimeMillis() / 1000L);
+        assertTrue(seconds <= 1, date);
+    }
+    
+    @Test
+    public void parseRetryAfter()
+    {
+        assertEquals(Duration.ofSeconds(120), SatisDates.parseRetryAfter(" 120 "));
+        assertEquals(Duration.ZERO, SatisDates.parseRetryAfter("Mon, 18 Mar 2019 15:10:24 GMT"));
+        assertNull(SatisDates.parseRetryAfter(null));
+        assertNull(SatisDates.parseRetryAfter("soon"));
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.unknowndomain.satisj.common.SatisApiException;
+import net.unknowndomain.satisj.common.SatisApiGroup;
+import net.unknowndomain.satisj.common.SatisError;
+import static net.unknowndomain.satisj.resilience.CircuitBreaker.State.CLOSED;
+import static net.unknowndomain.satisj.resilience.CircuitBreaker.State.HALF_OPEN;
+import static net.unknowndomain.satisj.resilience.CircuitBreaker.State.OPEN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * State transitions of the circuit breaker.
+ *
+ * @author journeyman
+ */
+public class CircuitBreakerTest
+{
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final IOException RESET = new IOException("Connection reset");
+    
+    private final List<String> transitions = new ArrayList<>();
+    
+    private CircuitBreakerPolicy policy()
+    {
+        return new CircuitBreakerPolicy()
+                .windowSize(10)
+                .minimumCalls(4)
+                .failureRateThreshold(0.5)
+                .openDuration(Duration.ZERO)
+                .halfOpenCalls(2)
+                .listener((group, from, to) -> transitions.add(from + "->" + to));
+    }
+    
+    private static SatisApiException status(int status)
+    {
+        return new SatisApiException(status, new SatisError());
+    }
+    
+    private static void succeed(CircuitBreaker breaker, int calls)
+    {
+        for (int i = 0; i < calls; i++)
+        {
+            breaker.acquirePermission();
+            breaker.onSuccess(FAST);
+        }
+    }
+    
+    private static void fail(CircuitBreaker breaker, int calls)
+    {
+        for (int i = 0; i < calls; i++)
+        {
+            breaker.acquirePermission();
+            breaker.onError(FAST, RESET);
+        }
+    }
+    
+    @Test
+    public void opensOnlyAfterMinimumCalls()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(SatisApiGroup.PAYMENT, policy().openDuration(Duration.ofHours(1)));
+        fail(breaker, 3);
+        assertEquals(CLOSED, breaker.getState());
+        assertEquals(1.0, breaker.getFailureRate());
+        fail(breaker, 1);
+        assertEquals(OPEN, breaker.getState());
+        assertThrows(CircuitBreakerOpenException.class, breaker::acquirePermission);
+        assertEquals(Arrays.asList("CLOSED->OPEN"), transitions);
+    }
+    
+    @Test
+    public void staysClosedBelowFailureRate()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(SatisApiGroup.PAYMENT, policy());
+        succeed(breaker, 3);
+        fail(breaker, 2);
+        assertEquals(CLOSED, breaker.getState());
+        assertEquals(0.4, breaker.getFailureRate(), 1e-9);
+        fail(breaker, 1);
+        assertEquals(OPEN, breaker.getState());
+    }
+    
+    @Test
+    public void oldOutcomesLeaveTheWindow()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(SatisApiGroup.PAYMENT, policy().windowSize(4).failureRateThreshold(0.75));
+        fail(breaker, 2);
+        succeed(breaker, 2);
+        assertEquals(0.5, breaker.getFailureRate());
+        succeed(breaker, 2);
+        assertEquals(0.0, breaker.getFailureRate());
+        fail(breaker, 2);
+        assertEquals(CLOSED, breaker.getState());
+        fail(breaker, 1);
+        assertEquals(OPEN, breaker.getState());
+    }
+    
+    @Test
+    public void slowCallsOpenTheBreaker()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(SatisApiGroup.PAYMENT, policy().slowCallDuration(Duration.ofMillis(100)).slowCallRateThreshold(0.5));
+        for (int i = 0; i < 3; i++)
+        {
+            breaker.acquirePermission();
+            breaker.onSuccess(TimeUnit.SECONDS.toNanos(1));
+        }
+        assertEquals(1.0, breaker.getSlowCallRate());
+        assertEquals(0.0, breaker.getFailureRate());
+        assertEquals(CLOSED, breaker.getState());
+        breaker.acquirePermission();
+        breaker.onSuccess(FAST);
+        assertEquals(OPEN, breaker.getState());
+    }
+    
+    @Test
+    public void classifiesFailures()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(SatisApiGroup.PAYMENT, policy().minimumCalls(100));
+        breaker.onError(FAST, status(400));
+        breaker.onError(FAST, status(404));
+        breaker.onError(FAST, status(500));
+        breaker.onError(FAST, status(503));
+        breaker.onError(FAST, RESET);
+        assertEquals(0.6, breaker.getFailureRate(), 1e-9);
+        // not recorded: parse errors and failures without a response
+        breaker.onError(FAST, new JsonParseException(null, "Unexpected character"));
+        breaker.onError(FAST, new SatisApiException("no response", RESET));
+        breaker.onError(FAST, new IllegalStateException());
+        assertEquals(0.6, breaker.getFailureRate(), 1e-9);
+    }
+    
+    @Test
+    public void waitsForTheOpenDuration() throws InterruptedException
+    {
+        CircuitBreaker breaker = new CircuitBreaker(SatisApiGroup.PAYMENT, policy().openDuration(Duration.ofMillis(200)));
+        fail(breaker, 4);
+        assertThrows(CircuitBreakerOpenException.class, breaker::acquirePermission);
+        assertEquals(OPEN, breaker.getState());
+        Thread.sleep(250);
+        breaker.acquirePermission();
+        assertEquals(HALF_OPEN, breaker.getState());
+    }
+    
+    @Test
+    public void closesWhenTheProbesSucceed()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(SatisApiGroup.PAYMENT, policy());
+        fail(breaker, 4);
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+        assertEquals(HALF_OPEN, breaker.getState());
+        // both probes are in flight
+        assertThrows(CircuitBreakerOpenException.class, breaker::acquirePermission);
+        breaker.onSuccess(FAST);
+        assertEquals(HALF_OPEN, breaker.getState());
+        breaker.onError(FAST, status(409));
+        assertEquals(CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getFailureRate());
+        assertEquals(Arrays.asList("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), transitions);
+    }
+    
+    @Test
+    public void opensAgainWhenTheProbesFail()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(SatisApiGroup.PAYMENT, policy());
+        fail(breaker, 4);
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+        breaker.onSuccess(FAST);
+        breaker.onError(FAST, status(502));
+        assertEquals(OPEN, breaker.getState());
+        assertEquals(Arrays.asList("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->OPEN"), transitions);
+    }
+    
+    @Test
+    public void releasedProbesCanBeAcquiredAgain()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(SatisApiGroup.PAYMENT, policy());
+        fail(breaker, 4);
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+        breaker.release();
+        breaker.onError(FAST, new IllegalArgumentException("not sent"));
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+        assertThrows(CircuitBreakerOpenException.class, breaker::acquirePermission);
+        assertEquals(HALF_OPEN, breaker.getState());
+    }
+    
+    @Test
+    public void lateOutcomesDoNotCountWhileOpen()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(SatisApiGroup.PAYMENT, policy().openDuration(Duration.ofHours(1)));
+        fail(breaker, 4);
+        breaker.onSuccess(FAST);
+        breaker.onError(FAST, RESET);
+        assertEquals(OPEN, breaker.getState());
+        assertEquals(0.0, breaker.getFailureRate());
+    }
+    
+    @Test
+    public void listenerFailuresAreIgnored()
+    {
+        CircuitBreaker breaker = new CircuitBreaker(SatisApiGroup.PAYMENT, policy().listener((group, from, to) -> 
+        {
+            throw new IllegalStateException("listener");
+        }));
+        fail(breaker, 4);
+        assertEquals(OPEN, breaker.getState());
+        breaker.acquirePermission();
+        assertEquals(HALF_OPEN, breaker.getState());
+    }
+}
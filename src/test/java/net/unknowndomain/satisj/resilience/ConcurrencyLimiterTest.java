@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import net.unknowndomain.satisj.common.SatisApiGroup;
+import static net.unknowndomain.satisj.common.SatisPriority.HIGH;
+import static net.unknowndomain.satisj.common.SatisPriority.LOW;
+import static net.unknowndomain.satisj.common.SatisPriority.NORMAL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Slots, queue and races between the timeout and the grant of a slot.
+ *
+ * @author journeyman
+ */
+public class ConcurrencyLimiterTest
+{
+    private static Bulkhead bulkhead(int maxConcurrentCalls, int maxQueue)
+    {
+        return new Bulkhead(SatisApiGroup.PAYMENT, new BulkheadPolicy()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxQueue(maxQueue), Duration.ofSeconds(10));
+    }
+    
+    @Test
+    public void fullQueueRejects() throws InterruptedException
+    {
+        Bulkhead bulkhead = bulkhead(1, 1);
+        List<String> order = new ArrayList<>();
+        assertTrue(bulkhead.acquire(NORMAL, () -> order.add("first"), Runnable::run));
+        assertTrue(bulkhead.acquire(NORMAL, () -> order.add("second"), Runnable::run));
+        assertFalse(bulkhead.acquire(NORMAL, () -> order.add("third"), Runnable::run));
+        assertFalse(bulkhead.acquire(NORMAL, 0));
+        assertEquals(2, bulkhead.getRejected());
+        assertEquals(1, bulkhead.getQueueLength());
+        bulkhead.release();
+        assertEquals(2, order.size());
+        assertEquals("second", order.get(1));
+        assertEquals(1, bulkhead.getInFlight());
+    }
+    
+    @Test
+    public void waitersAreServedByPriority() throws InterruptedException
+    {
+        Bulkhead bulkhead = bulkhead(1, 10);
+        List<String> order = new ArrayList<>();
+        assertTrue(bulkhead.acquire(NORMAL, 0));
+        bulkhead.acquire(LOW, () -> order.add("low"), Runnable::run);
+        bulkhead.acquire(NORMAL, () -> order.add("normal"), Runnable::run);
+        bulkhead.acquire(HIGH, () -> order.add("high"), Runnable::run);
+        bulkhead.acquire(HIGH, () -> order.add("high later"), Runnable::run);
+        assertEquals(2, bulkhead.getQueueLength(HIGH));
+        for (int i = 0; i < 4; i++)
+        {
+            bulkhead.release();
+        }
+        assertEquals("[high, high later, normal, low]", order.toString());
+    }
+    
+    @Test
+    public void agedWaiterGoesFirst() throws InterruptedException
+    {
+        Bulkhead bulkhead = new Bulkhead(SatisApiGroup.PAYMENT, new BulkheadPolicy()
+                .maxConcurrentCalls(1)
+                .maxQueue(10), Duration.ofMillis(10));
+        List<String> order = new ArrayList<>();
+        assertTrue(bulkhead.acquire(NORMAL, 0));
+        bulkhead.acquire(LOW, () -> order.add("low"), Runnable::run);
+        Thread.sleep(50);
+        bulkhead.acquire(HIGH, () -> order.add("high"), Runnable::run);
+        bulkhead.release();
+        bulkhead.release();
+        assertEquals("[low, high]", order.toString());
+    }
+    
+    @Test
+    public void timedOutWaiterLeavesTheQueue() throws InterruptedException
+    {
+        Bulkhead bulkhead = bulkhead(1, 10);
+        assertTrue(bulkhead.acquire(NORMAL, 0));
+        assertFalse(bulkhead.acquire(NORMAL, TimeUnit.MILLISECONDS.toNanos(20)));
+        assertEquals(0, bulkhead.getQueueLength());
+        assertEquals(1, bulkhead.getRejected());
+        bulkhead.release();
+        assertEquals(0, bulkhead.getInFlight());
+    }
+    
+    @Test
+    public void interruptedWaiterKeepsNoSlot() throws Exception
+    {
+        Bulkhead bulkhead = bulkhead(1, 10);
+        assertTrue(bulkhead.acquire(NORMAL, 0));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            CountDownLatch started = new CountDownLatch(1);
+            Future<Boolean> waiter = executor.submit(() -> 
+            {
+                started.countDown();
+                return bulkhead.acquire(NORMAL, TimeUnit.SECONDS.toNanos(10));
+            });
+            started.await();
+            while (bulkhead.getQueueLength() == 0)
+            {
+                Thread.yield();
+            }
+            waiter.cancel(true);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+            assertEquals(0, bulkhead.getQueueLength());
+            bulkhead.release();
+            assertEquals(0, bulkhead.getInFlight());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void timeoutRacingTheGrantLeaksNoSlot() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            int granted = 0;
+            Bulkhead bulkhead = bulkhead(1, 10);
+            for (int i = 0; i < 2000; i++)
+            {
+                assertTrue(bulkhead.acquire(NORMAL, 0));
+                long delay = ThreadLocalRandom.current().nextLong(50_000);
+                Future<?> holder = executor.submit(() -> 
+                {
+                    LockSupport.parkNanos(delay);
+                    bulkhead.release();
+                });
+                if (bulkhead.acquire(NORMAL, 25_000))
+                {
+                    granted++;
+                    holder.get();
+                    assertEquals(1, bulkhead.getInFlight());
+                    bulkhead.release();
+                }
+                holder.get();
+                assertEquals(0, bulkhead.getInFlight());
+                assertEquals(0, bulkhead.getQueueLength());
+            }
+            assertEquals(2000 - granted, bulkhead.getRejected());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void adaptiveLimiterSharesTheQueue() throws InterruptedException
+    {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(new AdaptiveLimitPolicy()
+                .initialLimit(1)
+                .minLimit(1)
+                .maxQueue(1), Duration.ofSeconds(10));
+        List<String> order = new ArrayList<>();
+        assertTrue(limiter.acquire(NORMAL, 0));
+        assertTrue(limiter.acquire(HIGH, () -> order.add("high"), Runnable::run));
+        assertFalse(limiter.acquire(HIGH, 0));
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10), null);
+        assertEquals("[high]", order.toString());
+        assertEquals(1, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import java.io.IOException;
+import java.time.Duration;
+import net.unknowndomain.satisj.common.SatisApiException;
+import net.unknowndomain.satisj.common.SatisError;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Backoff, Retry-After, per-method and per-status rules and the budget of 
+ * the retry policy.
+ *
+ * @author journeyman
+ */
+public class RetryPolicyTest
+{
+    private static final IOException RESET = new IOException("Connection reset");
+    
+    private static RetryPolicy exact()
+    {
+        return new RetryPolicy()
+                .maxAttempts(5)
+                .initialBackoff(Duration.ofMillis(100))
+                .maxBackoff(Duration.ofMillis(500))
+                .jitter(0)
+                .budget(null);
+    }
+    
+    private static SatisApiException status(int status, Duration retryAfter)
+    {
+        SatisApiException retVal = new SatisApiException(status, new SatisError());
+        retVal.setRetryAfter(retryAfter);
+        return retVal;
+    }
+    
+    @Test
+    public void backoffGrowsUpToItsCap()
+    {
+        RetryPolicy policy = exact();
+        assertEquals(100, policy.retryDelay("GET", 1, RESET));
+        assertEquals(200, policy.retryDelay("GET", 2, RESET));
+        assertEquals(400, policy.retryDelay("GET", 3, RESET));
+        assertEquals(500, policy.retryDelay("GET", 4, RESET));
+        assertEquals(-1, policy.retryDelay("GET", 5, RESET));
+    }
+    
+    @Test
+    public void jitterStaysWithinTheBackoff()
+    {
+        RetryPolicy policy = exact().jitter(1.0);
+        for (int i = 0; i < 100; i++)
+        {
+            long delay = policy.retryDelay("GET", 2, RESET);
+            assertTrue((delay >= 0) && (delay <= 200), String.valueOf(delay));
+        }
+    }
+    
+    @Test
+    public void retryAfterIsHonoredWhenLonger()
+    {
+        RetryPolicy policy = exact();
+        assertEquals(1000, policy.retryDelay("POST", 1, status(503, Duration.ofSeconds(1))));
+        assertEquals(100, policy.retryDelay("POST", 1, status(429, Duration.ofMillis(10))));
+        assertEquals(-1, policy.retryDelay("POST", 1, status(503, Duration.ofMinutes(5))));
+        assertEquals(100, policy.honorRetryAfter(false).retryDelay("POST", 1, status(503, Duration.ofMinutes(5))));
+    }
+    
+    @Test
+    public void methodsAndStatusesFollowTheRules()
+    {
+        RetryPolicy policy = exact();
+        assertEquals(-1, policy.retryDelay("DELETE", 1, RESET));
+        assertEquals(100, policy.retryDelay("PUT", 1, status(502, null)));
+        assertEquals(-1, policy.retryDelay("PUT", 1, status(500, null)));
+        assertEquals(-1, policy.retryDelay("GET", 1, status(404, null)));
+        assertEquals(-1, policy.retryDelay("GET", 1, new JsonParseException(null, "Unexpected end-of-input")));
+        assertEquals(-1, policy.retryDelay("GET", 1, new IllegalStateException("Closed")));
+        policy.retryMethod("post", false).retryMethod("delete", true).retryStatus(500, true).retryStatus(429, false);
+        assertEquals(-1, policy.retryDelay("POST", 1, RESET));
+        assertEquals(100, policy.retryDelay("DELETE", 1, RESET));
+        assertEquals(100, policy.retryDelay("GET", 1, status(500, null)));
+        assertEquals(-1, policy.retryDelay("GET", 1, status(429, null)));
+    }
+    
+    @Test
+    public void budgetLimitsTheRetries()
+    {
+        // one retry per second over the ten seconds of the window, plus one for every two calls
+        RetryPolicy policy = exact().budget(new RetryBudget(0.5, 1));
+        int allowed = 0;
+        while (policy.retryDelay("GET", 1, RESET) >= 0)
+        {
+            allowed++;
+        }
+        assertEquals(10, allowed);
+        assertEquals(-1, policy.retryDelay("GET", 1, RESET));
+        for (int i = 0; i < 4; i++)
+        {
+            policy.onCall();
+        }
+        assertTrue(policy.retryDelay("GET", 1, RESET) >= 0);
+        assertTrue(policy.retryDelay("GET", 1, RESET) >= 0);
+        assertEquals(-1, policy.retryDelay("GET", 1, RESET));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Coalescing and cancellation of the requests in flight.
+ *
+ * @author journeyman
+ */
+public class SingleFlightTest
+{
+    private final SingleFlight flights = new SingleFlight();
+    private final List<CompletableFuture<String>> started = new ArrayList<>();
+    
+    private CompletableFuture<String> join(String key)
+    {
+        return flights.join(key, () -> 
+        {
+            CompletableFuture<String> retVal = new CompletableFuture<>();
+            started.add(retVal);
+            return retVal;
+        });
+    }
+    
+    @Test
+    public void callersShareOneRequest()
+    {
+        CompletableFuture<String> first = join("a");
+        CompletableFuture<String> second = join("a");
+        CompletableFuture<String> other = join("b");
+        assertEquals(2, started.size());
+        assertEquals(2, flights.getInFlight());
+        assertEquals(1, flights.getCoalesced());
+        started.get(0).complete("done");
+        assertEquals("done", first.join());
+        assertEquals("done", second.join());
+        assertFalse(other.isDone());
+        assertEquals(1, flights.getInFlight());
+    }
+    
+    @Test
+    public void completedRequestIsNotJoined()
+    {
+        join("a");
+        started.get(0).complete("done");
+        join("a");
+        assertEquals(2, started.size());
+        assertEquals(0, flights.getCoalesced());
+    }
+    
+    @Test
+    public void failureIsShared()
+    {
+        CompletableFuture<String> first = join("a");
+        CompletableFuture<String> second = join("a");
+        IOException failure = new IOException("Connection reset");
+        started.get(0).completeExceptionally(failure);
+        assertSame(failure, assertThrows(ExecutionException.class, first::get).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, second::get).getCause());
+        assertEquals(0, flights.getInFlight());
+    }
+    
+    @Test
+    public void failureToStartIsNotJoined()
+    {
+        IllegalStateException failure = new IllegalStateException("Closed");
+        CompletableFuture<String> retVal = flights.join("a", () -> 
+        {
+            throw failure;
+        });
+        assertSame(failure, assertThrows(ExecutionException.class, retVal::get).getCause());
+        assertEquals(0, flights.getInFlight());
+    }
+    
+    @Test
+    public void cancellingOneCallerKeepsTheRequest()
+    {
+        CompletableFuture<String> first = join("a");
+        CompletableFuture<String> second = join("a");
+        assertTrue(first.cancel(true));
+        assertFalse(started.get(0).isCancelled());
+        started.get(0).complete("done");
+        assertTrue(first.isCancelled());
+        assertEquals("done", second.join());
+    }
+    
+    @Test
+    public void cancellingEveryCallerCancelsTheRequest()
+    {
+        CompletableFuture<String> first = join("a");
+        CompletableFuture<String> second = join("a");
+        first.cancel(true);
+        second.cancel(true);
+        assertTrue(started.get(0).isCancelled());
+        assertEquals(0, flights.getInFlight());
+        join("a");
+        assertEquals(2, started.size());
+    }
+    
+    @Test
+    public void cancelledRequestStillRunningIsNotJoined()
+    {
+        // an upstream ignoring the cancellation stays registered until it completes
+        CompletableFuture<String> stubborn = new CompletableFuture<String>()
+        {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning)
+            {
+                return false;
+            }
+        };
+        CompletableFuture<String> first = flights.join("a", () -> stubborn);
+        first.cancel(true);
+        assertEquals(1, flights.getInFlight());
+        CompletableFuture<String> second = join("a");
+        assertEquals(1, started.size());
+        assertEquals(0, flights.getCoalesced());
+        stubborn.complete("late");
+        started.get(0).complete("fresh");
+        assertEquals("fresh", second.join());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.resilience;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reservations and waits of the token bucket.
+ *
+ * @author journeyman
+ */
+public class TokenBucketTest
+{
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long SLACK = TimeUnit.MILLISECONDS.toNanos(20);
+    
+    private static void assertWait(long expected, long actual)
+    {
+        assertTrue(actual <= expected && actual > expected - SLACK, "wait " + actual + ", expected " + expected);
+    }
+    
+    @Test
+    public void burstIsServedAtOnce()
+    {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(-1, bucket.reserve(0));
+        assertTrue(bucket.getAvailablePermits() < 1.0);
+    }
+    
+    @Test
+    public void waitsQueueUpAtThePermittedRate()
+    {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        assertEquals(0, bucket.reserve(0));
+        assertWait(INTERVAL, bucket.reserve(TimeUnit.SECONDS.toNanos(1)));
+        assertWait(2 * INTERVAL, bucket.reserve(TimeUnit.SECONDS.toNanos(1)));
+        assertTrue(bucket.getAvailablePermits() < -1.0);
+    }
+    
+    @Test
+    public void rejectedWaitReservesNothing()
+    {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(-1, bucket.reserve(INTERVAL / 2));
+        assertEquals(-1, bucket.reserve(INTERVAL / 2));
+        assertWait(INTERVAL, bucket.reserve(TimeUnit.SECONDS.toNanos(1)));
+    }
+    
+    @Test
+    public void refundShortensTheNextWait()
+    {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        assertEquals(0, bucket.reserve(0));
+        assertWait(INTERVAL, bucket.reserve(TimeUnit.SECONDS.toNanos(1)));
+        bucket.refund();
+        assertWait(INTERVAL, bucket.reserve(TimeUnit.SECONDS.toNanos(1)));
+        bucket.refund();
+        bucket.refund();
+        bucket.refund();
+        assertEquals(1.0, bucket.getAvailablePermits());
+    }
+    
+    @Test
+    public void refillStopsAtTheBurst() throws InterruptedException
+    {
+        TokenBucket bucket = new TokenBucket(1000, 2);
+        assertEquals(0, bucket.reserve(0));
+        Thread.sleep(50);
+        assertEquals(2.0, bucket.getAvailablePermits());
+    }
+    
+    @Test
+    public void concurrentReservationsDoNotOverlap()
+    {
+        TokenBucket bucket = new TokenBucket(10, 0);
+        List<CompletableFuture<Long>> reservations = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+        {
+            // when each permit can be used, whenever its caller got to the bucket
+            reservations.add(CompletableFuture.supplyAsync(() -> bucket.reserve(TimeUnit.SECONDS.toNanos(2)) + System.nanoTime()));
+        }
+        List<Long> due = new ArrayList<>();
+        reservations.forEach(reservation -> due.add(reservation.join()));
+        Collections.sort(due);
+        for (int i = 1; i < due.size(); i++)
+        {
+            long gap = due.get(i) - due.get(i - 1);
+            assertTrue(gap > INTERVAL - SLACK && gap < INTERVAL + SLACK, "gap " + gap);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 Marco Bignami.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.unknowndomain.satisj.transport;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import net.unknowndomain.satisj.Environment;
+import net.unknowndomain.satisj.LocalServer;
+import net.unknowndomain.satisj.async.SatisAsyncClient;
+import net.unknowndomain.satisj.common.SatisClientConfig;
+import net.unknowndomain.satisj.payment.Payment;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * HTTP/2 mode of the Apache transport against an HTTP/1.1 only local server.
+ *
+ * @author journeyman
+ */
+public class ApacheAsyncTransportTest
+{
+    private static SatisClientConfig http2(LocalServer server, AtomicReference<ApacheAsyncTransport> transport)
+    {
+        return new SatisClientConfig()
+                .transport(server.redirect(config -> 
+                {
+                    transport.set(new ApacheAsyncTransport(config));
+                    return transport.get();
+                }))
+                .http2(true);
+    }
+    
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @Test
+    public void http1ServerIsServedInHttp2Mode() throws Exception
+    {
+        AtomicReference<ApacheAsyncTransport> transport = new AtomicReference<>();
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments/", exchange -> LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}"));
+            try (SatisAsyncClient client = new SatisAsyncClient(Environment.STAGING, LocalServer.auth(), http2(server, transport)))
+            {
+                for (int i = 0; i < 3; i++)
+                {
+                    Payment payment = client.payment().retrieve().id("payment-1").build().queue().get(5, TimeUnit.SECONDS);
+                    assertEquals("payment-1", payment.getId());
+                }
+                assertFalse(transport.get().isHttp2Active());
+                assertEquals(0, transport.get().getActiveStreams());
+            }
+        }
+    }
+    
+    @Test
+    public void concurrentStreamsAreBounded() throws Exception
+    {
+        AtomicReference<ApacheAsyncTransport> transport = new AtomicReference<>();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        try (LocalServer server = new LocalServer())
+        {
+            server.handle("/g_business/v1/payments/", exchange -> 
+            {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                sleep(300);
+                inFlight.decrementAndGet();
+                LocalServer.json(exchange, 200, "{\"id\":\"payment-1\"}");
+            });
+            SatisClientConfig config = http2(server, transport)
+                    .maxConcurrentStreams(2);
+            try (SatisAsyncClient client = new SatisAsyncClient(Environment.STAGING, LocalServer.auth(), config))
+            {
+                CompletableFuture<?>[] calls = new CompletableFuture<?>[6];
+                for (int i = 0; i < calls.length; i++)
+                {
+                    calls[i] = client.payment().retrieve().id("payment-" + i).build().queue();
+                }
+                sleep(100);
+                assertEquals(2, transport.get().getActiveStreams());
+                assertTrue(transport.get().getWaitingStreams() > 0);
+                CompletableFuture.allOf(calls).get(10, TimeUnit.SECONDS);
+                assertEquals(2, maxInFlight.get());
+                assertEquals(0, transport.get().getActiveStreams());
+            }
+        }
+    }
+}